@@ -0,0 +1,133 @@
+package com.example.grpc;
+
+import java.util.Collection;
+import java.util.concurrent.locks.LockSupport;
+
+/***
+ * Rolls the trade tapes of all order books up into OHLCV bars at every supported interval. Runs on its own thread so
+ * that aggregation stays off the matching path, and reuses a single trade entry so that it doesn't allocate per trade.
+ */
+public class BarAggregator implements Runnable {
+    static final BarInterval[] BAR_INTERVALS = {
+            BarInterval.ONE_SECOND,
+            BarInterval.ONE_MINUTE,
+            BarInterval.FIVE_MINUTES,
+            BarInterval.ONE_HOUR
+    };
+
+    /**
+     * How long to sleep when there are no new trades on any tape.
+     */
+    private static final long IDLE_NANOS = 1_000_000L;
+
+    /**
+     * How long after its interval ends a bar is completed. A trade is timestamped just before it is published, so this
+     * leaves time for trades timestamped at the end of an interval to reach the tape.
+     */
+    static final long COMPLETION_LAG_MILLIS = 100;
+
+    private final TradeTape[] tradeTapes;
+    private final BarSeries[][] barSeries;
+
+    /**
+     * Sequence of the next trade to aggregate from each tape.
+     */
+    private final long[] nextSequences;
+
+    private final TradeTape.Entry entry = new TradeTape.Entry();
+
+    private volatile boolean running = true;
+
+    /***
+     * Constructor.
+     * @param tradeTapes Trade tapes to aggregate.
+     * @param capacity Number of completed bars retained for replay per ticker and interval.
+     */
+    public BarAggregator(Collection<TradeTape> tradeTapes, int capacity) {
+        this.tradeTapes = tradeTapes.toArray(new TradeTape[0]);
+        this.barSeries = new BarSeries[this.tradeTapes.length][BAR_INTERVALS.length];
+        this.nextSequences = new long[this.tradeTapes.length];
+
+        for (int i = 0; i < this.tradeTapes.length; i++) {
+            for (int j = 0; j < BAR_INTERVALS.length; j++) {
+                barSeries[i][j] = new BarSeries(this.tradeTapes[i].ticker, BAR_INTERVALS[j], capacity);
+            }
+            nextSequences[i] = this.tradeTapes[i].lastSequence() + 1;
+        }
+    }
+
+    /***
+     * Find the bar series of a ticker at an interval.
+     * @param ticker Ticker.
+     * @param barInterval Bar interval.
+     * @return Bar series, or null if the ticker or interval isn't aggregated.
+     */
+    public BarSeries getBarSeries(Ticker ticker, BarInterval barInterval) {
+        for (int i = 0; i < tradeTapes.length; i++) {
+            if (tradeTapes[i].ticker == ticker) {
+                for (BarSeries series: barSeries[i]) {
+                    if (series.barInterval == barInterval) {
+                        return series;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /***
+     * Aggregate until stopped.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            // Read the time before draining the tapes, so every trade timestamped earlier gets aggregated first
+            if (!poll(System.currentTimeMillis())) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    /***
+     * Stop aggregating.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /***
+     * Aggregate every new trade on every tape, then complete any bars whose interval has elapsed.
+     * @param now Current time in milliseconds, read before the tapes are drained.
+     * @return True if there were any new trades.
+     */
+    boolean poll(long now) {
+        boolean hadTrades = false;
+
+        for (int i = 0; i < tradeTapes.length; i++) {
+            TradeTape tradeTape = tradeTapes[i];
+            BarSeries[] tickerBarSeries = barSeries[i];
+
+            while (nextSequences[i] <= tradeTape.lastSequence()) {
+                if (!tradeTape.read(nextSequences[i], entry)) {
+                    // Fell so far behind that the tape wrapped, skip the trades which were lost
+                    nextSequences[i] = tradeTape.oldestSequence();
+                    continue;
+                }
+
+                for (BarSeries series: tickerBarSeries) {
+                    series.onTrade(entry.timestamp, entry.price, entry.volume);
+                }
+                nextSequences[i]++;
+                hadTrades = true;
+            }
+        }
+
+        for (BarSeries[] tickerBarSeries: barSeries) {
+            for (BarSeries series: tickerBarSeries) {
+                series.onTime(now - COMPLETION_LAG_MILLIS);
+            }
+        }
+
+        return hadTrades;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.grpc;
+
+/***
+ * OHLCV bars of one ticker at one interval, aggregated incrementally from the trade tape. The bar currently being built
+ * is private to the aggregating thread. Completed bars are published with an increasing sequence number and the most
+ * recent are retained in a ring buffer so that subscribers can replay from a sequence number.
+ */
+public class BarSeries {
+    static final int DEFAULT_CAPACITY = 1 << 10;
+
+    private static final int START_TIME = 0;
+    private static final int OPEN = 1;
+    private static final int HIGH = 2;
+    private static final int LOW = 3;
+    private static final int CLOSE = 4;
+    private static final int VOLUME = 5;
+    private static final int TRADE_COUNT = 6;
+    private static final int FIELDS = 7;
+
+    final Ticker ticker;
+    final BarInterval barInterval;
+    final long intervalMillis;
+
+    private final RingBuffer bars;
+
+    /**
+     * The bar currently being built. Only touched by the aggregating thread.
+     */
+    private boolean hasCurrentBar = false;
+    private long startTime;
+    private long open;
+    private long high;
+    private long low;
+    private long close;
+    private long volume;
+    private long tradeCount;
+
+    /**
+     * Start time of the last completed bar. A trade in that interval or earlier can't be added to any bar.
+     */
+    private long lastCompletedStartTime = Long.MIN_VALUE;
+
+    /**
+     * Number of trades which arrived after their bar had been completed.
+     */
+    private volatile long lateTradeCount = 0;
+
+    /***
+     * Constructor.
+     * @param ticker Ticker of the bars.
+     * @param barInterval Bar interval.
+     * @param capacity Number of completed bars retained for replay. Must be a power of two.
+     */
+    public BarSeries(Ticker ticker, BarInterval barInterval, int capacity) {
+        this.ticker = ticker;
+        this.barInterval = barInterval;
+        this.intervalMillis = intervalMillis(barInterval);
+        this.bars = new RingBuffer(capacity, FIELDS);
+    }
+
+    ///
+    // Aggregating Thread Functions
+    ///
+
+    /***
+     * Add a trade to the current bar, first completing the current bar if the trade falls in a later interval. A trade
+     * for an interval whose bar was already completed is dropped and counted, as its bar can't be published twice.
+     * @param timestamp Trade timestamp.
+     * @param price Trade price.
+     * @param tradeVolume Trade volume.
+     */
+    void onTrade(long timestamp, long price, long tradeVolume) {
+        long barStartTime = timestamp - timestamp % intervalMillis;
+
+        if (barStartTime <= lastCompletedStartTime || (hasCurrentBar && barStartTime < startTime)) {
+            lateTradeCount++;
+            return;
+        }
+
+        if (hasCurrentBar && barStartTime > startTime) {
+            completeBar();
+        }
+
+        if (!hasCurrentBar) {
+            hasCurrentBar = true;
+            startTime = barStartTime;
+            open = price;
+            high = price;
+            low = price;
+            volume = 0;
+            tradeCount = 0;
+        }
+
+        high = Math.max(high, price);
+        low = Math.min(low, price);
+        close = price;
+        volume += tradeVolume;
+        tradeCount++;
+    }
+
+    /***
+     * Complete the current bar if its interval has elapsed, so that quiet markets still publish their bars on time.
+     * @param now Time in milliseconds by which every trade has been added.
+     */
+    void onTime(long now) {
+        if (hasCurrentBar && now >= startTime + intervalMillis) {
+            completeBar();
+        }
+    }
+
+    ///
+    // Reader Functions
+    ///
+
+    /***
+     * @return Sequence of the latest completed bar, zero if there are none.
+     */
+    public long lastSequence() {
+        return bars.lastSequence();
+    }
+
+    /***
+     * @return Sequence of the oldest completed bar still available for replay.
+     */
+    public long oldestSequence() {
+        return bars.oldestSequence();
+    }
+
+    /***
+     * @return Number of trades dropped because they arrived after their bar was completed.
+     */
+    public long lateTradeCount() {
+        return lateTradeCount;
+    }
+
+    /***
+     * Read a completed bar.
+     * @param sequence Bar sequence.
+     * @return Protobuf Bar, or null if the bar hasn't completed yet or is no longer retained.
+     */
+    public Bar readBar(long sequence) {
+        if (sequence > bars.lastSequence()) {
+            return null;
+        }
+
+        Bar.Builder builder = Bar.newBuilder()
+                .setSequence(sequence)
+                .setTicker(ticker)
+                .setInterval(barInterval)
+                .setStartTime(bars.get(sequence, START_TIME))
+                .setOpen(bars.get(sequence, OPEN))
+                .setHigh(bars.get(sequence, HIGH))
+                .setLow(bars.get(sequence, LOW))
+                .setClose(bars.get(sequence, CLOSE))
+                .setVolume(bars.get(sequence, VOLUME))
+                .setTradeCount(bars.get(sequence, TRADE_COUNT));
+
+        return bars.isIntact(sequence) ? builder.build() : null;
+    }
+
+    ///
+    // Private Functions
+    ///
+
+    /***
+     * Publish the current bar and start afresh.
+     */
+    private void completeBar() {
+        long sequence = bars.claim();
+        bars.set(sequence, START_TIME, startTime);
+        bars.set(sequence, OPEN, open);
+        bars.set(sequence, HIGH, high);
+        bars.set(sequence, LOW, low);
+        bars.set(sequence, CLOSE, close);
+        bars.set(sequence, VOLUME, volume);
+        bars.set(sequence, TRADE_COUNT, tradeCount);
+        bars.publish(sequence);
+
+        lastCompletedStartTime = startTime;
+        hasCurrentBar = false;
+    }
+
+    ///
+    // Utility Functions
+    ///
+
+    /***
+     * Converts a protobuf bar interval to milliseconds.
+     * @param barInterval Protobuf BarInterval.
+     * @return Interval length in milliseconds.
+     */
+    static long intervalMillis(BarInterval barInterval) {
+        switch (barInterval) {
+            case ONE_SECOND:
+                return 1000L;
+            case ONE_MINUTE:
+                return 60 * 1000L;
+            case FIVE_MINUTES:
+                return 5 * 60 * 1000L;
+            case ONE_HOUR:
+                return 60 * 60 * 1000L;
+            default:
+                throw new IllegalArgumentException("Unknown bar interval: " + barInterval);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.grpc;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.OptionalLong;
+
+/***
+ * An order book which matches orders in periodic batch auctions instead of continuously. Orders submitted between
+ * auctions are collected without being matched. When `runAuction` is called a single uniform clearing price is
+ * computed from the aggregated demand and supply, and all crossing orders are filled at that price in one pass.
+ *
+ * Unfilled limit orders rest in the book and take part in later auctions. Market orders take part in the next auction
+ * only, ahead of all limit orders, and any unfilled remainder is cancelled.
+ */
+public class BatchAuctionOrderBook extends OrderBook {
+    /**
+     * Market orders submitted since the last auction. They have no limit price so they are kept out of the price
+     * sorted sets.
+     */
+    ArrayDeque<MutableOrder> marketBuyOrders;
+    ArrayDeque<MutableOrder> marketSellOrders;
+
+    /***
+     * Constructor.
+     * @param ticker Ticker of this order book.
+     */
+    public BatchAuctionOrderBook(Ticker ticker) {
+        super(ticker);
+
+        marketBuyOrders = new ArrayDeque<>();
+        marketSellOrders = new ArrayDeque<>();
+    }
+
+    /***
+     * Run one auction: compute the clearing price which maximises the executable volume, fill all crossing orders at
+     * that price, then cancel the unfilled remainder of any market orders.
+     * @return Clearing price, or empty if no orders crossed.
+     */
+    public OptionalLong runAuction() {
+        long stamp = lock.writeLock();
+        try {
+            return auction();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    ///
+    // Private Functions
+    ///
+
+    /***
+     * Add a newly submitted order to the book to wait for the next auction. Called with the write lock held.
+     * @param mutableOrder New mutable order.
+     */
+    @Override
+    void addOrder(MutableOrder mutableOrder) {
+        assert(!allOrders.containsKey(mutableOrder.orderId));
+
+        allOrders.put(mutableOrder.orderId, mutableOrder);
+
+        if (mutableOrder.isLimitOrder) {
+            if (mutableOrder.isBuyOrder) {
+                buyOrders.add(mutableOrder);
+                bidLevels.add(mutableOrder.limitPrice, mutableOrder.remainingVolume);
+            } else {
+                sellOrders.add(mutableOrder);
+                askLevels.add(mutableOrder.limitPrice, mutableOrder.remainingVolume);
+            }
+        } else {
+            (mutableOrder.isBuyOrder ? marketBuyOrders : marketSellOrders).add(mutableOrder);
+        }
+    }
+
+    /***
+     * Take an active order out of the book so it can be cancelled, including a market order which is waiting for the
+     * next auction. Called with the write lock held.
+     * @param mutableOrder Active mutable order.
+     */
+    @Override
+    void removeActiveOrder(MutableOrder mutableOrder) {
+        if (mutableOrder.isLimitOrder) {
+            super.removeActiveOrder(mutableOrder);
+        } else {
+            (mutableOrder.isBuyOrder ? marketBuyOrders : marketSellOrders).remove(mutableOrder);
+        }
+    }
+
+    /***
+     * Compute the clearing price which maximises the executable volume, fill all crossing orders at that price, then
+     * cancel the unfilled remainder of any market orders. Called with the write lock held.
+     * @return Clearing price, or empty if no orders crossed.
+     */
+    private OptionalLong auction() {
+        AuctionCursor buys = new AuctionCursor(true, marketBuyOrders, buyOrders);
+        AuctionCursor sells = new AuctionCursor(false, marketSellOrders, sellOrders);
+
+        boolean hasBuy = buys.advance();
+        boolean hasSell = sells.advance();
+        long buyVolume = hasBuy ? buys.order.remainingVolume : 0;
+        long sellVolume = hasSell ? sells.order.remainingVolume : 0;
+        long auctionVolume = 0;
+        long lastBuyPrice = 0;
+        long lastSellPrice = 0;
+
+        // Walk down the demand curve and up the supply curve until they stop crossing
+        while (hasBuy && hasSell && buys.limitPrice() >= sells.limitPrice()) {
+            long volume = Math.min(buyVolume, sellVolume);
+
+            auctionVolume += volume;
+            buyVolume -= volume;
+            sellVolume -= volume;
+            lastBuyPrice = buys.limitPrice();
+            lastSellPrice = sells.limitPrice();
+
+            if (buyVolume == 0 && (hasBuy = buys.advance())) {
+                buyVolume = buys.order.remainingVolume;
+            }
+            if (sellVolume == 0 && (hasSell = sells.advance())) {
+                sellVolume = sells.order.remainingVolume;
+            }
+        }
+
+        OptionalLong clearingPrice = OptionalLong.empty();
+
+        if (auctionVolume > 0) {
+            // Any price between the last crossing orders clears the same volume, as long as it doesn't make the next
+            // limit orders in line executable too. Market orders don't constrain the price.
+            long lowPrice = lastSellPrice;
+            long highPrice = lastBuyPrice;
+
+            if (hasBuy && buys.order.isLimitOrder) {
+                lowPrice = Math.max(lowPrice, buys.limitPrice());
+            }
+            if (hasSell && sells.order.isLimitOrder) {
+                highPrice = Math.min(highPrice, sells.limitPrice());
+            }
+
+            if (lowPrice != Long.MIN_VALUE && highPrice != Long.MAX_VALUE) {
+                clearingPrice = OptionalLong.of(lowPrice + (highPrice - lowPrice) / 2);
+            } else if (lowPrice != Long.MIN_VALUE) {
+                clearingPrice = OptionalLong.of(lowPrice);
+            } else if (highPrice != Long.MAX_VALUE) {
+                clearingPrice = OptionalLong.of(highPrice);
+            }
+            // Otherwise only market orders crossed and there is no price to trade at
+        }
+
+        if (clearingPrice.isPresent()) {
+            fill(clearingPrice.getAsLong(), auctionVolume);
+        }
+
+        cancelUnfilledMarketOrders(marketBuyOrders);
+        cancelUnfilledMarketOrders(marketSellOrders);
+
+        return clearingPrice;
+    }
+
+    /***
+     * Fill the given volume on both sides of the book in priority order, all at the clearing price.
+     * @param clearingPrice Uniform price of every fill in this auction.
+     * @param auctionVolume Total volume to fill on each side.
+     */
+    private void fill(long clearingPrice, long auctionVolume) {
+        AuctionCursor buys = new AuctionCursor(true, marketBuyOrders, buyOrders);
+        AuctionCursor sells = new AuctionCursor(false, marketSellOrders, sellOrders);
+
+        buys.advance();
+        sells.advance();
+
+        while (auctionVolume > 0) {
+            MutableOrder buyOrder = buys.order;
+            MutableOrder sellOrder = sells.order;
+
+            long volume = Math.min(auctionVolume, Math.min(buyOrder.remainingVolume, sellOrder.remainingVolume));
+
+            buyOrder.remainingVolume -= volume;
+            buyOrder.filledVolume += volume;
+            sellOrder.remainingVolume -= volume;
+            sellOrder.filledVolume += volume;
+
+            buyOrder.cost += clearingPrice * volume;
+            sellOrder.cost += clearingPrice * volume;
+
+            tradeTape.publish(clearingPrice, volume, buyOrder.orderId, sellOrder.orderId, TradeTape.TAKER_NONE);
+            if (buyOrder.isLimitOrder) {
+                bidLevels.reduce(buyOrder.limitPrice, volume, buyOrder.remainingVolume == 0);
+            }
+            if (sellOrder.isLimitOrder) {
+                askLevels.reduce(sellOrder.limitPrice, volume, sellOrder.remainingVolume == 0);
+            }
+
+            auctionVolume -= volume;
+
+            if (buyOrder.remainingVolume == 0) {
+                buyOrders.remove(buyOrder);
+                addToHistory(buyOrder);
+                buys.advance();
+            }
+
+            if (sellOrder.remainingVolume == 0) {
+                sellOrders.remove(sellOrder);
+                addToHistory(sellOrder);
+                sells.advance();
+            }
+        }
+    }
+
+    /***
+     * Market orders only live for a single auction. Cancel whatever is left of them and empty the queue.
+     * @param marketOrders Market orders which took part in the auction.
+     */
+    private void cancelUnfilledMarketOrders(ArrayDeque<MutableOrder> marketOrders) {
+        for (MutableOrder mutableOrder: marketOrders) {
+            if (mutableOrder.remainingVolume > 0) {
+                mutableOrder.isCancelled = true;
+                addToHistory(mutableOrder);
+            }
+        }
+        marketOrders.clear();
+    }
+
+    /***
+     * Iterates one side of the auction in priority order: market orders first, then limit orders best price first.
+     */
+    private static class AuctionCursor {
+        private final boolean isBuySide;
+        private final Iterator<MutableOrder> marketOrders;
+        private final Iterator<MutableOrder> limitOrders;
+        MutableOrder order;
+
+        AuctionCursor(boolean isBuySide, Iterable<MutableOrder> marketOrders, Iterable<MutableOrder> limitOrders) {
+            this.isBuySide = isBuySide;
+            this.marketOrders = marketOrders.iterator();
+            this.limitOrders = limitOrders.iterator();
+        }
+
+        /***
+         * Move on to the next order which still has volume remaining.
+         * @return True if there is such an order.
+         */
+        boolean advance() {
+            do {
+                if (marketOrders.hasNext()) {
+                    order = marketOrders.next();
+                } else if (limitOrders.hasNext()) {
+                    order = limitOrders.next();
+                } else {
+                    order = null;
+                    return false;
+                }
+            } while (order.remainingVolume == 0);
+            return true;
+        }
+
+        /***
+         * Limit price of the current order. Market orders will trade at any price.
+         * @return Limit price.
+         */
+        long limitPrice() {
+            if (order.isLimitOrder) {
+                return order.limitPrice;
+            }
+            return isBuySide ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.grpc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/***
+ * Blocking client for the binary order entry protocol. Each call sends one request and waits for its response.
+ *
+ * Responses are returned as flyweights over the client's receive buffer, so they are only valid until the next call.
+ * Not thread safe, use one client per thread.
+ */
+public class BinaryOrderEntryClient implements Closeable {
+    private static final int BUFFER_SIZE = 4 * 1024;
+
+    private final SocketChannel socketChannel;
+    private final ByteBuffer sendBuffer = BinaryProtocol.allocateBuffer(BUFFER_SIZE);
+    private final ByteBuffer receiveBuffer = BinaryProtocol.allocateBuffer(BUFFER_SIZE);
+
+    private final BinaryProtocol.MessageHeader header = new BinaryProtocol.MessageHeader();
+    private final BinaryProtocol.SubmitOrder submitOrder = new BinaryProtocol.SubmitOrder();
+    private final BinaryProtocol.OrderReference orderReference = new BinaryProtocol.OrderReference();
+    private final BinaryProtocol.GetQuote getQuote = new BinaryProtocol.GetQuote();
+    private final BinaryProtocol.SubmitOrderAck submitOrderAck = new BinaryProtocol.SubmitOrderAck();
+    private final BinaryProtocol.OrderState orderState = new BinaryProtocol.OrderState();
+    private final BinaryProtocol.CancelOrderAck cancelOrderAck = new BinaryProtocol.CancelOrderAck();
+    private final BinaryProtocol.QuoteResponse quoteResponse = new BinaryProtocol.QuoteResponse();
+
+    /***
+     * Constructor. Connects straight away.
+     * @param host Server host.
+     * @param port Server binary order entry port.
+     * @throws IOException If the connection fails.
+     */
+    public BinaryOrderEntryClient(String host, int port) throws IOException {
+        socketChannel = SocketChannel.open(new InetSocketAddress(host, port));
+        socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    /***
+     * Submit an order.
+     * @param customerId Customer ID.
+     * @param ticker Ticker.
+     * @param orderDirection Order direction.
+     * @param orderType Order type.
+     * @param limitPrice Limit price, ignored for market orders.
+     * @param volume Volume.
+     * @return Acknowledgement, valid until the next call.
+     * @throws IOException On connection error or if the server rejects the request.
+     */
+    public BinaryProtocol.SubmitOrderAck submitOrder(long customerId, Ticker ticker, OrderDirection orderDirection,
+                                                     OrderType orderType, long limitPrice, long volume)
+            throws IOException {
+        submitOrder.wrap(sendBuffer, encodeHeader(BinaryProtocol.SubmitOrder.TEMPLATE_ID,
+                BinaryProtocol.SubmitOrder.BLOCK_LENGTH));
+        submitOrder
+                .customerId(customerId)
+                .ticker(ticker)
+                .orderDirection(orderDirection)
+                .orderType(orderType)
+                .limitPrice(limitPrice)
+                .volume(volume);
+
+        submitOrderAck.wrap(receiveBuffer, roundTrip(BinaryProtocol.SubmitOrderAck.TEMPLATE_ID));
+        return submitOrderAck;
+    }
+
+    /***
+     * Retrieve an order.
+     * @param orderId Order ID.
+     * @return Order state, valid until the next call. Check `orderWasFound` first.
+     * @throws IOException On connection error or if the server rejects the request.
+     */
+    public BinaryProtocol.OrderState retrieveOrder(long orderId) throws IOException {
+        orderReference.wrap(sendBuffer, encodeHeader(BinaryProtocol.OrderReference.RETRIEVE_TEMPLATE_ID,
+                BinaryProtocol.OrderReference.BLOCK_LENGTH));
+        orderReference.orderId(orderId);
+
+        orderState.wrap(receiveBuffer, roundTrip(BinaryProtocol.OrderState.TEMPLATE_ID));
+        return orderState;
+    }
+
+    /***
+     * Cancel an order.
+     * @param orderId Order ID.
+     * @return Cancellation acknowledgement, valid until the next call.
+     * @throws IOException On connection error or if the server rejects the request.
+     */
+    public BinaryProtocol.CancelOrderAck cancelOrder(long orderId) throws IOException {
+        orderReference.wrap(sendBuffer, encodeHeader(BinaryProtocol.OrderReference.CANCEL_TEMPLATE_ID,
+                BinaryProtocol.OrderReference.BLOCK_LENGTH));
+        orderReference.orderId(orderId);
+
+        cancelOrderAck.wrap(receiveBuffer, roundTrip(BinaryProtocol.CancelOrderAck.TEMPLATE_ID));
+        return cancelOrderAck;
+    }
+
+    /***
+     * Get a bid/ask quote.
+     * @param ticker Ticker.
+     * @return Quote, valid until the next call.
+     * @throws IOException On connection error or if the server rejects the request.
+     */
+    public BinaryProtocol.QuoteResponse getQuote(Ticker ticker) throws IOException {
+        getQuote.wrap(sendBuffer, encodeHeader(BinaryProtocol.GetQuote.TEMPLATE_ID,
+                BinaryProtocol.GetQuote.BLOCK_LENGTH));
+        getQuote.ticker(ticker);
+
+        quoteResponse.wrap(receiveBuffer, roundTrip(BinaryProtocol.QuoteResponse.TEMPLATE_ID));
+        return quoteResponse;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socketChannel.close();
+    }
+
+    ///
+    // Private Functions
+    ///
+
+    /***
+     * Start a new request in the send buffer.
+     * @param templateId Template ID of the request.
+     * @param blockLength Length of the request body.
+     * @return Offset of the request body.
+     */
+    private int encodeHeader(int templateId, int blockLength) {
+        sendBuffer.clear();
+        header.wrap(sendBuffer, 0);
+        header.encode(templateId, blockLength);
+        for (int i = 0; i < blockLength; i += 8) {
+            sendBuffer.putLong(BinaryProtocol.MessageHeader.ENCODED_LENGTH + i, 0);
+        }
+        sendBuffer.limit(BinaryProtocol.MessageHeader.ENCODED_LENGTH + blockLength);
+        return BinaryProtocol.MessageHeader.ENCODED_LENGTH;
+    }
+
+    /***
+     * Send the request in the send buffer and read one response into the receive buffer.
+     * @param expectedTemplateId Template ID of the expected response.
+     * @return Offset of the response body.
+     * @throws IOException On connection error or if the server rejects the request.
+     */
+    private int roundTrip(int expectedTemplateId) throws IOException {
+        while (sendBuffer.hasRemaining()) {
+            socketChannel.write(sendBuffer);
+        }
+
+        receiveBuffer.clear();
+        readAtLeast(BinaryProtocol.MessageHeader.ENCODED_LENGTH);
+        header.wrap(receiveBuffer, 0);
+        readAtLeast(BinaryProtocol.MessageHeader.ENCODED_LENGTH + header.blockLength());
+
+        if (header.templateId() != expectedTemplateId) {
+            throw new IOException("Expected response " + expectedTemplateId + " but got " + header.templateId());
+        }
+
+        return BinaryProtocol.MessageHeader.ENCODED_LENGTH;
+    }
+
+    private void readAtLeast(int length) throws IOException {
+        while (receiveBuffer.position() < length) {
+            if (socketChannel.read(receiveBuffer) < 0) {
+                throw new IOException("Server disconnected");
+            }
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.example.grpc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/***
+ * Serves the binary order entry protocol over TCP, alongside the gRPC service and against the same OrderManager.
+ * A single thread runs a non-blocking event loop over all connections. Requests are decoded straight out of each
+ * connection's direct read buffer into the engine, and responses encoded straight into its direct write buffer.
+ */
+public class BinaryOrderEntryServer implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(BinaryOrderEntryServer.class.getName());
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OrderManager orderManager;
+    private final ServerSocketChannel serverSocketChannel;
+    private final Selector selector;
+
+    private volatile boolean isRunning = true;
+    private Thread thread;
+
+    private final BinaryProtocol.MessageHeader header = new BinaryProtocol.MessageHeader();
+    private final BinaryProtocol.SubmitOrder submitOrder = new BinaryProtocol.SubmitOrder();
+    private final BinaryProtocol.OrderReference orderReference = new BinaryProtocol.OrderReference();
+    private final BinaryProtocol.GetQuote getQuote = new BinaryProtocol.GetQuote();
+    private final BinaryProtocol.SubmitOrderAck submitOrderAck = new BinaryProtocol.SubmitOrderAck();
+    private final BinaryProtocol.OrderState orderState = new BinaryProtocol.OrderState();
+    private final BinaryProtocol.CancelOrderAck cancelOrderAck = new BinaryProtocol.CancelOrderAck();
+    private final BinaryProtocol.QuoteResponse quoteResponse = new BinaryProtocol.QuoteResponse();
+    private final BinaryProtocol.Reject reject = new BinaryProtocol.Reject();
+
+    // Encoders run by the order book while the order can't change, allocated once
+    private final Consumer<MutableOrder> submitOrderAckEncoder = this::encodeSubmitOrderAck;
+    private final Consumer<MutableOrder> orderStateEncoder = this::encodeOrderState;
+
+    /***
+     * Constructor. Binds the listening socket straight away.
+     * @param orderManager Order manager shared with the gRPC service.
+     * @param port TCP port to listen on.
+     * @throws IOException If the socket can't be bound.
+     */
+    public BinaryOrderEntryServer(OrderManager orderManager, int port) throws IOException {
+        this.orderManager = orderManager;
+
+        selector = Selector.open();
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.bind(new InetSocketAddress(port));
+        serverSocketChannel.configureBlocking(false);
+        serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /***
+     * @return TCP port the server is listening on, useful when it was bound to port 0.
+     * @throws IOException If the socket is closed.
+     */
+    public int port() throws IOException {
+        return ((InetSocketAddress) serverSocketChannel.getLocalAddress()).getPort();
+    }
+
+    /***
+     * Start the event loop on its own thread.
+     * @return The event loop thread.
+     */
+    public Thread start() {
+        thread = new Thread(this, "binary-order-entry");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /***
+     * Stop the event loop and close the listening socket and every connection. Waits for the event loop to finish.
+     * @throws IOException If the selector can't be closed.
+     */
+    public void stop() throws IOException {
+        isRunning = false;
+
+        if (thread == null) {
+            closeAll();
+            return;
+        }
+
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /***
+     * Run the event loop until stopped.
+     */
+    @Override
+    public void run() {
+        try {
+            while (isRunning) {
+                selector.select();
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            service(key);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // Only this connection is affected
+                        close(key);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // Stopped
+        } finally {
+            try {
+                closeAll();
+            } catch (IOException e) {
+                // Stopping anyway
+            }
+        }
+    }
+
+    ///
+    // Private Functions
+    ///
+
+    /***
+     * Drop a connection. Failing to close it cleanly only affects that connection, so it doesn't stop the event loop.
+     * @param key Selection key of the connection.
+     */
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already dropped
+        }
+    }
+
+    /***
+     * Close the listening socket, every connection and the selector. Only called once the event loop isn't running.
+     * @throws IOException If the selector can't be closed.
+     */
+    private void closeAll() throws IOException {
+        if (!selector.isOpen()) {
+            return;
+        }
+        // Closing the selector only deregisters the channels, so close them first
+        for (SelectionKey key: selector.keys()) {
+            close(key);
+        }
+        serverSocketChannel.close();
+        selector.close();
+    }
+
+    /***
+     * Accept a new connection and give it its own buffers.
+     * @throws IOException On socket error.
+     */
+    private void accept() throws IOException {
+        SocketChannel socketChannel = serverSocketChannel.accept();
+        if (socketChannel == null) {
+            return;
+        }
+
+        socketChannel.configureBlocking(false);
+        socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        socketChannel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    /***
+     * Read whatever requests have arrived on a connection, handle every complete one, then write the responses.
+     * A connection whose responses aren't being read stops being read from until they drain, so that a client which
+     * pipelines requests without reading replies can't make the event loop spin.
+     * @param key Selection key of the connection.
+     * @throws IOException On socket error or if the peer has disconnected.
+     */
+    private void service(SelectionKey key) throws IOException {
+        SocketChannel socketChannel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer readBuffer = connection.readBuffer;
+        ByteBuffer writeBuffer = connection.writeBuffer;
+
+        if (key.isReadable() && readBuffer.hasRemaining() && socketChannel.read(readBuffer) < 0) {
+            throw new IOException("Peer disconnected");
+        }
+
+        // Keep going while responses drain straight away, as no more data may arrive to handle what's buffered
+        boolean handledAny;
+        do {
+            handledAny = handleRequests(readBuffer, writeBuffer);
+
+            writeBuffer.flip();
+            socketChannel.write(writeBuffer);
+            writeBuffer.compact();
+        } while (handledAny && writeBuffer.position() == 0);
+
+        boolean canRead = readBuffer.hasRemaining() && writeBuffer.remaining() >= BinaryProtocol.MAX_MESSAGE_LENGTH;
+        boolean mustWrite = writeBuffer.position() > 0;
+        key.interestOps((canRead ? SelectionKey.OP_READ : 0) | (mustWrite ? SelectionKey.OP_WRITE : 0));
+    }
+
+    /***
+     * Handle every complete request in the read buffer, for as long as the write buffer has room for a response.
+     * @param readBuffer Connection read buffer, in write mode.
+     * @param writeBuffer Connection write buffer, in write mode.
+     * @return True if any request was handled.
+     * @throws IOException If a request is longer than the read buffer.
+     */
+    private boolean handleRequests(ByteBuffer readBuffer, ByteBuffer writeBuffer) throws IOException {
+        boolean handledAny = false;
+
+        readBuffer.flip();
+        while (readBuffer.remaining() >= BinaryProtocol.MessageHeader.ENCODED_LENGTH
+                && writeBuffer.remaining() >= BinaryProtocol.MAX_MESSAGE_LENGTH) {
+            header.wrap(readBuffer, readBuffer.position());
+            int messageLength = BinaryProtocol.MessageHeader.ENCODED_LENGTH + header.blockLength();
+            if (messageLength > readBuffer.capacity()) {
+                throw new IOException("Message too long: " + messageLength);
+            }
+            if (readBuffer.remaining() < messageLength) {
+                break;
+            }
+
+            handle(readBuffer, readBuffer.position() + BinaryProtocol.MessageHeader.ENCODED_LENGTH, writeBuffer);
+            readBuffer.position(readBuffer.position() + messageLength);
+            handledAny = true;
+        }
+        readBuffer.compact();
+
+        return handledAny;
+    }
+
+    /***
+     * Handle one request and append its response to the write buffer. The request header is already wrapped. A request
+     * from another schema or version, or one which fails, is answered with a Reject instead.
+     * @param readBuffer Buffer holding the request.
+     * @param bodyOffset Offset of the request body.
+     * @param writeBuffer Buffer to append the response to.
+     */
+    private void handle(ByteBuffer readBuffer, int bodyOffset, ByteBuffer writeBuffer) {
+        int templateId = header.templateId();
+
+        if (header.schemaId() != BinaryProtocol.SCHEMA_ID) {
+            encodeReject(writeBuffer, templateId, BinaryProtocol.Reject.UNSUPPORTED_SCHEMA);
+            return;
+        }
+        if (header.version() < 1 || header.version() > BinaryProtocol.SCHEMA_VERSION) {
+            encodeReject(writeBuffer, templateId, BinaryProtocol.Reject.UNSUPPORTED_VERSION);
+            return;
+        }
+        if (header.blockLength() < blockLength(templateId)) {
+            encodeReject(writeBuffer, templateId, BinaryProtocol.Reject.INVALID_FIELD);
+            return;
+        }
+
+        int responseOffset = writeBuffer.position();
+        try {
+            dispatch(templateId, readBuffer, bodyOffset, writeBuffer);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to handle binary request " + templateId, e);
+
+            // Replace whatever part of the response was written
+            writeBuffer.position(responseOffset);
+            encodeReject(writeBuffer, templateId, BinaryProtocol.Reject.INTERNAL_ERROR);
+        }
+    }
+
+    /***
+     * Decode a request by its template ID and handle it.
+     * @param templateId Template ID of the request.
+     * @param readBuffer Buffer holding the request.
+     * @param bodyOffset Offset of the request body.
+     * @param writeBuffer Buffer to append the response to.
+     */
+    private void dispatch(int templateId, ByteBuffer readBuffer, int bodyOffset, ByteBuffer writeBuffer) {
+        switch (templateId) {
+            case BinaryProtocol.SubmitOrder.TEMPLATE_ID:
+                submitOrder.wrap(readBuffer, bodyOffset);
+                handleSubmitOrder(writeBuffer);
+                break;
+
+            case BinaryProtocol.OrderReference.RETRIEVE_TEMPLATE_ID:
+                orderReference.wrap(readBuffer, bodyOffset);
+                handleRetrieveOrder(writeBuffer);
+                break;
+
+            case BinaryProtocol.OrderReference.CANCEL_TEMPLATE_ID:
+                orderReference.wrap(readBuffer, bodyOffset);
+                handleCancelOrder(writeBuffer);
+                break;
+
+            case BinaryProtocol.GetQuote.TEMPLATE_ID:
+                getQuote.wrap(readBuffer, bodyOffset);
+                handleGetQuote(writeBuffer);
+                break;
+
+            default:
+                encodeReject(writeBuffer, templateId, BinaryProtocol.Reject.UNKNOWN_TEMPLATE);
+        }
+    }
+
+    /***
+     * Minimum body length of a request. A longer body is accepted and the extra bytes are skipped.
+     * @param templateId Template ID of the request.
+     * @return Body length, zero for unknown requests.
+     */
+    private static int blockLength(int templateId) {
+        switch (templateId) {
+            case BinaryProtocol.SubmitOrder.TEMPLATE_ID:
+                return BinaryProtocol.SubmitOrder.BLOCK_LENGTH;
+            case BinaryProtocol.OrderReference.RETRIEVE_TEMPLATE_ID:
+            case BinaryProtocol.OrderReference.CANCEL_TEMPLATE_ID:
+                return BinaryProtocol.OrderReference.BLOCK_LENGTH;
+            case BinaryProtocol.GetQuote.TEMPLATE_ID:
+                return BinaryProtocol.GetQuote.BLOCK_LENGTH;
+            default:
+                return 0;
+        }
+    }
+
+    private void handleSubmitOrder(ByteBuffer writeBuffer) {
+        Ticker ticker = Ticker.forNumber(submitOrder.ticker());
+        OrderDirection orderDirection = OrderDirection.forNumber(submitOrder.orderDirection());
+        OrderType orderType = OrderType.forNumber(submitOrder.orderType());
+
+        if (ticker == null || orderDirection == null || orderType == null) {
+            encodeReject(writeBuffer, BinaryProtocol.SubmitOrder.TEMPLATE_ID, BinaryProtocol.Reject.INVALID_FIELD);
+            return;
+        }
+
+        submitOrderAck.wrap(writeBuffer, encodeHeader(writeBuffer, BinaryProtocol.SubmitOrderAck.TEMPLATE_ID,
+                BinaryProtocol.SubmitOrderAck.BLOCK_LENGTH));
+
+        orderManager.submitOrder(submitOrder.customerId(), ticker, orderDirection == OrderDirection.BUY,
+                orderType == OrderType.LIMIT, submitOrder.limitPrice(), submitOrder.volume(), submitOrderAckEncoder);
+    }
+
+    private void encodeSubmitOrderAck(MutableOrder mutableOrder) {
+        submitOrderAck
+                .orderId(mutableOrder.orderId)
+                .meanMatchedPrice(mutableOrder.meanMatchedPrice())
+                .matchedVolume(mutableOrder.filledVolume);
+    }
+
+    private void handleRetrieveOrder(ByteBuffer writeBuffer) {
+        orderState.wrap(writeBuffer, encodeHeader(writeBuffer, BinaryProtocol.OrderState.TEMPLATE_ID,
+                BinaryProtocol.OrderState.BLOCK_LENGTH));
+        orderState.orderWasFound(orderManager.readOrder(orderReference.orderId(), orderStateEncoder));
+    }
+
+    private void encodeOrderState(MutableOrder mutableOrder) {
+        orderState
+                .ticker(mutableOrder.ticker)
+                .orderDirection(mutableOrder.isBuyOrder ? OrderDirection.BUY : OrderDirection.SELL)
+                .orderType(mutableOrder.isLimitOrder ? OrderType.LIMIT : OrderType.MARKET)
+                .orderStatus(mutableOrder.orderStatus())
+                .orderId(mutableOrder.orderId)
+                .customerId(mutableOrder.customerId)
+                .limitPrice(mutableOrder.limitPrice)
+                .volume(mutableOrder.filledVolume + mutableOrder.remainingVolume)
+                .meanMatchedPrice(mutableOrder.meanMatchedPrice())
+                .matchedVolume(mutableOrder.filledVolume);
+    }
+
+    private void handleCancelOrder(ByteBuffer writeBuffer) {
+        Optional<OrderStatus> orderStatus = orderManager.cancelOrder(orderReference.orderId());
+
+        cancelOrderAck.wrap(writeBuffer, encodeHeader(writeBuffer, BinaryProtocol.CancelOrderAck.TEMPLATE_ID,
+                BinaryProtocol.CancelOrderAck.BLOCK_LENGTH));
+        cancelOrderAck.orderWasFound(orderStatus.isPresent());
+
+        if (orderStatus.isPresent()) {
+            cancelOrderAck.finalOrderStatus(orderStatus.get());
+        }
+    }
+
+    private void handleGetQuote(ByteBuffer writeBuffer) {
+        Ticker ticker = Ticker.forNumber(getQuote.ticker());
+
+        if (ticker == null) {
+            encodeReject(writeBuffer, BinaryProtocol.GetQuote.TEMPLATE_ID, BinaryProtocol.Reject.INVALID_FIELD);
+            return;
+        }
+
+        OrderBook orderBook = orderManager.getOrderBook(ticker);
+
+        quoteResponse.wrap(writeBuffer, encodeHeader(writeBuffer, BinaryProtocol.QuoteResponse.TEMPLATE_ID,
+                BinaryProtocol.QuoteResponse.BLOCK_LENGTH));
+        orderBook.read(() -> quoteResponse
+                .bid(orderBook.bestBid())
+                .ask(orderBook.bestAsk()));
+    }
+
+    private void encodeReject(ByteBuffer writeBuffer, int rejectedTemplateId, int reason) {
+        reject.wrap(writeBuffer, encodeHeader(writeBuffer, BinaryProtocol.Reject.TEMPLATE_ID,
+                BinaryProtocol.Reject.BLOCK_LENGTH));
+        reject
+                .rejectedTemplateId(rejectedTemplateId)
+                .reason(reason);
+    }
+
+    /***
+     * Append a message header to the write buffer, zero the body and reserve room for it.
+     * @param writeBuffer Buffer to append to.
+     * @param templateId Template ID of the message.
+     * @param blockLength Length of the message body.
+     * @return Offset of the message body.
+     */
+    private int encodeHeader(ByteBuffer writeBuffer, int templateId, int blockLength) {
+        int headerOffset = writeBuffer.position();
+        int bodyOffset = headerOffset + BinaryProtocol.MessageHeader.ENCODED_LENGTH;
+
+        header.wrap(writeBuffer, headerOffset);
+        header.encode(templateId, blockLength);
+        for (int i = 0; i < blockLength; i += 8) {
+            writeBuffer.putLong(bodyOffset + i, 0);
+        }
+
+        writeBuffer.position(bodyOffset + blockLength);
+        return bodyOffset;
+    }
+
+    /***
+     * Per connection state.
+     */
+    private static class Connection {
+        final ByteBuffer readBuffer = BinaryProtocol.allocateBuffer(BUFFER_SIZE);
+        final ByteBuffer writeBuffer = BinaryProtocol.allocateBuffer(BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.grpc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/***
+ * A fixed-layout binary order entry protocol, for clients which can't afford the cost of protobuf and HTTP/2 on every
+ * round trip. Every message is an 8 byte header followed by a fixed length body, all little-endian. Messages are
+ * read and written in place through flyweights wrapped around a (usually direct) ByteBuffer, so nothing is allocated
+ * per message.
+ *
+ * Enums are sent as their protobuf numbers in a single byte.
+ */
+public final class BinaryProtocol {
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int SCHEMA_ID = 1;
+    static final int SCHEMA_VERSION = 1;
+
+    /**
+     * Size of the largest message, header included. Buffers must have at least this much room to make progress.
+     */
+    static final int MAX_MESSAGE_LENGTH = MessageHeader.ENCODED_LENGTH + OrderState.BLOCK_LENGTH;
+
+    private BinaryProtocol() {
+    }
+
+    /***
+     * Allocate a direct buffer in the protocol byte order.
+     * @param capacity Capacity in bytes.
+     * @return Direct ByteBuffer.
+     */
+    static ByteBuffer allocateBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(BYTE_ORDER);
+    }
+
+    /***
+     * Base of all flyweights. A flyweight holds no data of its own, it reads and writes fields of the buffer region
+     * it is wrapped around.
+     */
+    abstract static class Flyweight {
+        ByteBuffer buffer;
+        int offset;
+
+        void wrap(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        int getUnsignedShort(int fieldOffset) {
+            return buffer.getShort(offset + fieldOffset) & 0xFFFF;
+        }
+
+        void putUnsignedShort(int fieldOffset, int value) {
+            buffer.putShort(offset + fieldOffset, (short) value);
+        }
+
+        int getByte(int fieldOffset) {
+            return buffer.get(offset + fieldOffset);
+        }
+
+        void putByte(int fieldOffset, int value) {
+            buffer.put(offset + fieldOffset, (byte) value);
+        }
+
+        long getLong(int fieldOffset) {
+            return buffer.getLong(offset + fieldOffset);
+        }
+
+        void putLong(int fieldOffset, long value) {
+            buffer.putLong(offset + fieldOffset, value);
+        }
+    }
+
+    /***
+     * Header in front of every message: body length, template ID, schema ID and schema version.
+     */
+    static final class MessageHeader extends Flyweight {
+        static final int ENCODED_LENGTH = 8;
+
+        int blockLength() {
+            return getUnsignedShort(0);
+        }
+
+        int templateId() {
+            return getUnsignedShort(2);
+        }
+
+        int schemaId() {
+            return getUnsignedShort(4);
+        }
+
+        int version() {
+            return getUnsignedShort(6);
+        }
+
+        /***
+         * Write a header for a message of this schema.
+         * @param templateId Template ID of the message.
+         * @param blockLength Length of the message body.
+         */
+        void encode(int templateId, int blockLength) {
+            putUnsignedShort(0, blockLength);
+            putUnsignedShort(2, templateId);
+            putUnsignedShort(4, SCHEMA_ID);
+            putUnsignedShort(6, SCHEMA_VERSION);
+        }
+    }
+
+    ///
+    // Requests
+    ///
+
+    static final class SubmitOrder extends Flyweight {
+        static final int TEMPLATE_ID = 1;
+        static final int BLOCK_LENGTH = 32;
+
+        long customerId() { return getLong(0); }
+        int ticker() { return getByte(8); }
+        int orderDirection() { return getByte(9); }
+        int orderType() { return getByte(10); }
+        long limitPrice() { return getLong(16); }
+        long volume() { return getLong(24); }
+
+        SubmitOrder customerId(long value) { putLong(0, value); return this; }
+        SubmitOrder ticker(Ticker value) { putByte(8, value.getNumber()); return this; }
+        SubmitOrder orderDirection(OrderDirection value) { putByte(9, value.getNumber()); return this; }
+        SubmitOrder orderType(OrderType value) { putByte(10, value.getNumber()); return this; }
+        SubmitOrder limitPrice(long value) { putLong(16, value); return this; }
+        SubmitOrder volume(long value) { putLong(24, value); return this; }
+    }
+
+    /***
+     * Body of both RetrieveOrder and CancelOrder requests.
+     */
+    static final class OrderReference extends Flyweight {
+        static final int RETRIEVE_TEMPLATE_ID = 2;
+        static final int CANCEL_TEMPLATE_ID = 3;
+        static final int BLOCK_LENGTH = 8;
+
+        long orderId() { return getLong(0); }
+
+        OrderReference orderId(long value) { putLong(0, value); return this; }
+    }
+
+    static final class GetQuote extends Flyweight {
+        static final int TEMPLATE_ID = 4;
+        static final int BLOCK_LENGTH = 8;
+
+        int ticker() { return getByte(0); }
+
+        GetQuote ticker(Ticker value) { putByte(0, value.getNumber()); return this; }
+    }
+
+    ///
+    // Responses
+    ///
+
+    static final class SubmitOrderAck extends Flyweight {
+        static final int TEMPLATE_ID = 101;
+        static final int BLOCK_LENGTH = 24;
+
+        long orderId() { return getLong(0); }
+        long meanMatchedPrice() { return getLong(8); }
+        long matchedVolume() { return getLong(16); }
+
+        SubmitOrderAck orderId(long value) { putLong(0, value); return this; }
+        SubmitOrderAck meanMatchedPrice(long value) { putLong(8, value); return this; }
+        SubmitOrderAck matchedVolume(long value) { putLong(16, value); return this; }
+    }
+
+    static final class OrderState extends Flyweight {
+        static final int TEMPLATE_ID = 102;
+        static final int BLOCK_LENGTH = 56;
+
+        boolean orderWasFound() { return getByte(0) != 0; }
+        int ticker() { return getByte(1); }
+        int orderDirection() { return getByte(2); }
+        int orderType() { return getByte(3); }
+        int orderStatus() { return getByte(4); }
+        long orderId() { return getLong(8); }
+        long customerId() { return getLong(16); }
+        long limitPrice() { return getLong(24); }
+        long volume() { return getLong(32); }
+        long meanMatchedPrice() { return getLong(40); }
+        long matchedVolume() { return getLong(48); }
+
+        OrderState orderWasFound(boolean value) { putByte(0, value ? 1 : 0); return this; }
+        OrderState ticker(Ticker value) { putByte(1, value.getNumber()); return this; }
+        OrderState orderDirection(OrderDirection value) { putByte(2, value.getNumber()); return this; }
+        OrderState orderType(OrderType value) { putByte(3, value.getNumber()); return this; }
+        OrderState orderStatus(OrderStatus value) { putByte(4, value.getNumber()); return this; }
+        OrderState orderId(long value) { putLong(8, value); return this; }
+        OrderState customerId(long value) { putLong(16, value); return this; }
+        OrderState limitPrice(long value) { putLong(24, value); return this; }
+        OrderState volume(long value) { putLong(32, value); return this; }
+        OrderState meanMatchedPrice(long value) { putLong(40, value); return this; }
+        OrderState matchedVolume(long value) { putLong(48, value); return this; }
+    }
+
+    static final class CancelOrderAck extends Flyweight {
+        static final int TEMPLATE_ID = 103;
+        static final int BLOCK_LENGTH = 8;
+
+        boolean orderWasFound() { return getByte(0) != 0; }
+        int finalOrderStatus() { return getByte(1); }
+
+        CancelOrderAck orderWasFound(boolean value) { putByte(0, value ? 1 : 0); return this; }
+        CancelOrderAck finalOrderStatus(OrderStatus value) { putByte(1, value.getNumber()); return this; }
+    }
+
+    static final class QuoteResponse extends Flyweight {
+        static final int TEMPLATE_ID = 104;
+        static final int BLOCK_LENGTH = 16;
+
+        long bid() { return getLong(0); }
+        long ask() { return getLong(8); }
+
+        QuoteResponse bid(long value) { putLong(0, value); return this; }
+        QuoteResponse ask(long value) { putLong(8, value); return this; }
+    }
+
+    /***
+     * Sent instead of a response when a request can't be processed.
+     */
+    static final class Reject extends Flyweight {
+        static final int TEMPLATE_ID = 199;
+        static final int BLOCK_LENGTH = 8;
+
+        static final int UNKNOWN_TEMPLATE = 1;
+        static final int INVALID_FIELD = 2;
+        static final int UNSUPPORTED_SCHEMA = 3;
+        static final int UNSUPPORTED_VERSION = 4;
+        static final int INTERNAL_ERROR = 5;
+
+        int rejectedTemplateId() { return getUnsignedShort(0); }
+        int reason() { return getUnsignedShort(2); }
+
+        Reject rejectedTemplateId(int value) { putUnsignedShort(0, value); return this; }
+        Reject reason(int value) { putUnsignedShort(2, value); return this; }
+    }
+}
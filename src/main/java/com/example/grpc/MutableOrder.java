@@ -8,6 +8,7 @@ import java.util.Objects;
 public class MutableOrder {
     final public long orderId;
     final public long customerId;
+    final public Ticker ticker;
     final public long limitPrice;
     final public boolean isBuyOrder;
     final public boolean isLimitOrder;
@@ -23,18 +24,58 @@ public class MutableOrder {
      * @param submitOrderRequest Protobuf generated SubmitOrderRequest.
      */
     public MutableOrder(long orderId, SubmitOrderRequest submitOrderRequest) {
+        this(orderId,
+                submitOrderRequest.getCustomerId(),
+                submitOrderRequest.getTicker(),
+                submitOrderRequest.getOrderDirection() == OrderDirection.BUY,
+                submitOrderRequest.getOrderType() == OrderType.LIMIT,
+                submitOrderRequest.getLimitPrice(),
+                submitOrderRequest.getVolume());
+    }
+
+    /***
+     * Constructor.
+     * @param orderId Order ID.
+     * @param customerId Customer ID.
+     * @param ticker Ticker.
+     * @param isBuyOrder True for a buy, false for a sell.
+     * @param isLimitOrder True for a limit order, false for a market order.
+     * @param limitPrice Limit price.
+     * @param volume Volume.
+     */
+    public MutableOrder(long orderId, long customerId, Ticker ticker, boolean isBuyOrder, boolean isLimitOrder,
+                        long limitPrice, long volume) {
         this.orderId = orderId;
-        this.customerId = submitOrderRequest.getCustomerId();
-        this.limitPrice = submitOrderRequest.getLimitPrice();
-        this.isBuyOrder = (submitOrderRequest.getOrderDirection() == OrderDirection.BUY);
-        this.isLimitOrder = (submitOrderRequest.getOrderType() == OrderType.LIMIT);
-        this.remainingVolume = submitOrderRequest.getVolume();
+        this.customerId = customerId;
+        this.ticker = ticker;
+        this.limitPrice = limitPrice;
+        this.isBuyOrder = isBuyOrder;
+        this.isLimitOrder = isLimitOrder;
+        this.remainingVolume = volume;
         this.filledVolume = 0;
         this.finishTime = 0;
         this.cost = 0;
         this.isCancelled = false;
     }
 
+    /***
+     * Copy constructor.
+     * @param mutableOrder Order to copy.
+     */
+    MutableOrder(MutableOrder mutableOrder) {
+        this.orderId = mutableOrder.orderId;
+        this.customerId = mutableOrder.customerId;
+        this.ticker = mutableOrder.ticker;
+        this.limitPrice = mutableOrder.limitPrice;
+        this.isBuyOrder = mutableOrder.isBuyOrder;
+        this.isLimitOrder = mutableOrder.isLimitOrder;
+        this.remainingVolume = mutableOrder.remainingVolume;
+        this.filledVolume = mutableOrder.filledVolume;
+        this.finishTime = mutableOrder.finishTime;
+        this.cost = mutableOrder.cost;
+        this.isCancelled = mutableOrder.isCancelled;
+    }
+
     /***
      * Deduces the OrderStatus from the order's filled/remaining volume and cancellation status.
      * @return Deduced order status.
@@ -1,12 +1,35 @@
 package com.example.grpc;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /***
  * An order book for a specific ticker/asset. Contains the core functionality to submit, retrieve and cancel orders.
+ *
+ * Anything which changes the book holds the write lock for the whole operation. Queries read optimistically and
+ * retry if the book changed underneath them, so they usually see a consistent book without blocking matching. A query
+ * which keeps losing to writers falls back to the read lock rather than retrying forever, which is cheap because
+ * queries only copy out the levels they need under it.
  */
 public class OrderBook {
+    /**
+     * How many times a query reads optimistically before it takes the read lock instead.
+     */
+    static final int OPTIMISTIC_READ_ATTEMPTS = 8;
+
+    /**
+     * Per thread copies of the price levels. Queries copy levels in while reading optimistically and only build their
+     * response once the copy is known to be consistent.
+     */
+    private static final ThreadLocal<PriceLevels.Snapshot> BID_SNAPSHOT =
+            ThreadLocal.withInitial(PriceLevels.Snapshot::new);
+    private static final ThreadLocal<PriceLevels.Snapshot> ASK_SNAPSHOT =
+            ThreadLocal.withInitial(PriceLevels.Snapshot::new);
+
     /**
      * The ticker to which this order book pertains
      */
@@ -16,7 +39,7 @@ public class OrderBook {
      * All orders submitted get put into this hash map so that duplicate orders may not be submitted and existing
      * orders may be retrieved.
      */
-    HashMap<Long, MutableOrder> allOrders;
+    Map<Long, MutableOrder> allOrders;
 
     /**
      * Active buy orders and sell orders are put into these two sets until they are full matched.
@@ -24,19 +47,37 @@ public class OrderBook {
     ConcurrentSkipListSet<MutableOrder> buyOrders;
     ConcurrentSkipListSet<MutableOrder> sellOrders;
 
+    /**
+     * Aggregate volume of the active buy and sell orders at each price, kept in step with the two sets above.
+     */
+    PriceLevels bidLevels;
+    PriceLevels askLevels;
+
     /**
      * Once an order becomes inactive by either getting fully matched or cancelled, it goes into the history.
      */
     ConcurrentSkipListSet<MutableOrder> orderHistory;
 
+    /**
+     * Every execution is published to the trade tape.
+     */
+    final TradeTape tradeTape;
+
+    /**
+     * Guards every change to the book.
+     */
+    final StampedLock lock;
+
     /***
      * Constructor.
      * @param ticker Ticker of this order book.
      */
     public OrderBook(Ticker ticker) {
         this.ticker = ticker;
+        this.tradeTape = new TradeTape(ticker, TradeTape.DEFAULT_CAPACITY);
+        this.lock = new StampedLock();
 
-        allOrders = new HashMap<>();
+        allOrders = new ConcurrentHashMap<>();
 
         buyOrders = new ConcurrentSkipListSet<MutableOrder>(new Comparator<MutableOrder>() {
             @Override
@@ -54,10 +95,15 @@ public class OrderBook {
             }
         });
 
+        bidLevels = new PriceLevels(true);
+        askLevels = new PriceLevels(false);
+
         orderHistory = new ConcurrentSkipListSet<MutableOrder>(new Comparator<MutableOrder>() {
             @Override
             public int compare(MutableOrder o1, MutableOrder o2) {
-                return Long.compare(o1.finishTime, o2.finishTime);
+                // Orders often finish in the same millisecond, they must not be mistaken for duplicates
+                int finishTimeCompare = Long.compare(o1.finishTime, o2.finishTime);
+                return (finishTimeCompare != 0) ? finishTimeCompare : Long.compare(o1.orderId, o2.orderId);
             }
         });
     }
@@ -70,18 +116,33 @@ public class OrderBook {
      */
     public Order submitOrder(long orderId, SubmitOrderRequest submitOrderRequest) {
         assert(submitOrderRequest.getTicker() == ticker);
-        assert(!allOrders.containsKey(orderId));
 
         MutableOrder mutableOrder = new MutableOrder(orderId, submitOrderRequest);
-        allOrders.put(orderId, mutableOrder);
 
-        if (mutableOrder.isBuyOrder) {
-            matchBuy(mutableOrder);
-        } else {
-            matchSell(mutableOrder);
+        long stamp = lock.writeLock();
+        try {
+            addOrder(mutableOrder);
+            return mutableOrderToOrder(mutableOrder);
+        } finally {
+            lock.unlockWrite(stamp);
         }
+    }
 
-        return mutableOrderToOrder(mutableOrder);
+    /***
+     * Submit a new order to the matching engine without going through protobuf.
+     * @param mutableOrder New mutable order.
+     * @param onMatched Called with the order straight after matching, while nothing else can change it.
+     * @return The same mutable order, after matching.
+     */
+    MutableOrder submitOrder(MutableOrder mutableOrder, Consumer<MutableOrder> onMatched) {
+        long stamp = lock.writeLock();
+        try {
+            addOrder(mutableOrder);
+            onMatched.accept(mutableOrder);
+            return mutableOrder;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /***
@@ -90,7 +151,25 @@ public class OrderBook {
      * @return Protobuf Order.
      */
     public Order retrieveOrder(long orderId) {
-        return mutableOrderToOrder(allOrders.get(orderId));
+        MutableOrder mutableOrder = read(() -> new MutableOrder(allOrders.get(orderId)));
+        return mutableOrderToOrder(mutableOrder);
+    }
+
+    /***
+     * Read a consistent view of an order without going through protobuf.
+     * @param orderId Order ID.
+     * @param reader Reads the order. May be run more than once so it must not have side effects beyond its result.
+     * @return True if the order was found and read.
+     */
+    boolean readOrder(long orderId, Consumer<MutableOrder> reader) {
+        return read(() -> {
+            MutableOrder mutableOrder = allOrders.get(orderId);
+            if (mutableOrder == null) {
+                return Boolean.FALSE;
+            }
+            reader.accept(mutableOrder);
+            return Boolean.TRUE;
+        });
     }
 
     /***
@@ -100,26 +179,28 @@ public class OrderBook {
      * @return Terminal order status.
      */
     public OrderStatus cancelOrder(long orderId) {
-        MutableOrder mutableOrder = allOrders.get(orderId);
-        OrderStatus currentStatus = mutableOrder.orderStatus();
-
-        if (currentStatus == OrderStatus.CANCELLED || currentStatus == OrderStatus.PARTIALLY_FILLED_AND_CANCELLED ||
-                currentStatus == OrderStatus.FILLED) {
-            // Order is already in terminal state
-            return currentStatus;
-        }
+        long stamp = lock.writeLock();
+        try {
+            MutableOrder mutableOrder = allOrders.get(orderId);
+            OrderStatus currentStatus = mutableOrder.orderStatus();
+
+            if (currentStatus == OrderStatus.CANCELLED ||
+                    currentStatus == OrderStatus.PARTIALLY_FILLED_AND_CANCELLED ||
+                    currentStatus == OrderStatus.FILLED) {
+                // Order is already in terminal state
+                return currentStatus;
+            }
 
-        if (mutableOrder.isBuyOrder) {
-            buyOrders.remove(mutableOrder);
-        } else {
-            sellOrders.remove(mutableOrder);
-        }
+            removeActiveOrder(mutableOrder);
 
-        mutableOrder.finishTime = System.currentTimeMillis();
-        mutableOrder.isCancelled = true;
-        addToHistory(mutableOrder);
+            mutableOrder.finishTime = System.currentTimeMillis();
+            mutableOrder.isCancelled = true;
+            addToHistory(mutableOrder);
 
-        return mutableOrder.orderStatus();
+            return mutableOrder.orderStatus();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /***
@@ -128,20 +209,125 @@ public class OrderBook {
      * @return Protobuf Quote.
      */
     public Quote getQuote() {
-        Quote.Builder builder = Quote.newBuilder();
-        if (buyOrders.size() > 0) {
-            builder.setBid(buyOrders.first().limitPrice);
+        PriceLevels.Snapshot bids = BID_SNAPSHOT.get();
+        PriceLevels.Snapshot asks = ASK_SNAPSHOT.get();
+        read(() -> {
+            bidLevels.copyTo(bids, 1, Long.MAX_VALUE);
+            askLevels.copyTo(asks, 1, Long.MAX_VALUE);
+        });
+
+        return Quote.newBuilder()
+                .setBid(bids.bestPrice())
+                .setAsk(asks.bestPrice())
+                .build();
+    }
+
+    /***
+     * Highest bid currently in the order book.
+     * @return Bid price, zero if there are no buy orders.
+     */
+    public long bestBid() {
+        return bidLevels.bestPrice();
+    }
+
+    /***
+     * Lowest ask currently in the order book.
+     * @return Ask price, zero if there are no sell orders.
+     */
+    public long bestAsk() {
+        return askLevels.bestPrice();
+    }
+
+    /***
+     * Retrieve the aggregate volume at the best price levels on each side of the book.
+     * @param maxLevels Maximum number of levels per side, zero for all of them.
+     * @return Protobuf Depth.
+     */
+    public Depth getDepth(int maxLevels) {
+        PriceLevels.Snapshot bids = BID_SNAPSHOT.get();
+        PriceLevels.Snapshot asks = ASK_SNAPSHOT.get();
+        read(() -> {
+            bidLevels.copyTo(bids, maxLevels, Long.MAX_VALUE);
+            askLevels.copyTo(asks, maxLevels, Long.MAX_VALUE);
+        });
+
+        Depth.Builder builder = Depth.newBuilder();
+        for (int i = 0; i < bids.size; i++) {
+            builder.addBids(makeDepthLevel(bids, i));
         }
-        if (sellOrders.size() > 0) {
-            builder.setAsk(sellOrders.first().limitPrice);
+        for (int i = 0; i < asks.size; i++) {
+            builder.addAsks(makeDepthLevel(asks, i));
         }
         return builder.build();
     }
 
+    /***
+     * Estimate how a market order would fill against the book as it stands, without submitting it.
+     * @param orderDirection Direction of the hypothetical market order.
+     * @param volume Volume of the hypothetical market order.
+     * @return Protobuf FillEstimate with the fillable volume, its VWAP and the worst price reached.
+     */
+    public FillEstimate estimateFill(OrderDirection orderDirection, long volume) {
+        PriceLevels oppositeLevels = (orderDirection == OrderDirection.BUY) ? askLevels : bidLevels;
+        PriceLevels.Snapshot levels = (orderDirection == OrderDirection.BUY) ? ASK_SNAPSHOT.get() : BID_SNAPSHOT.get();
+        read(() -> oppositeLevels.copyTo(levels, 0, volume));
+
+        long remainingVolume = volume;
+        long cost = 0;
+        long worstPrice = 0;
+
+        for (int i = 0; i < levels.size; i++) {
+            long levelVolume = Math.min(remainingVolume, levels.volumes[i]);
+            remainingVolume -= levelVolume;
+            cost += levelVolume * levels.prices[i];
+            worstPrice = levels.prices[i];
+        }
+
+        long fillableVolume = volume - remainingVolume;
+        return FillEstimate.newBuilder()
+                .setFillableVolume(fillableVolume)
+                .setVwap((fillableVolume > 0) ? (cost / fillableVolume) : 0)
+                .setWorstPrice(worstPrice)
+                .setFullyFillable(remainingVolume == 0)
+                .build();
+    }
+
     ///
     // Private Functions
     ///
 
+    /***
+     * Add a newly submitted order to the book and match it. Called with the write lock held.
+     * @param mutableOrder New mutable order.
+     */
+    void addOrder(MutableOrder mutableOrder) {
+        assert(!allOrders.containsKey(mutableOrder.orderId));
+
+        allOrders.put(mutableOrder.orderId, mutableOrder);
+
+        if (mutableOrder.isBuyOrder) {
+            matchBuy(mutableOrder);
+        } else {
+            matchSell(mutableOrder);
+        }
+    }
+
+    /***
+     * Take an active order out of the book so it can be cancelled. Called with the write lock held.
+     * @param mutableOrder Active mutable order.
+     */
+    void removeActiveOrder(MutableOrder mutableOrder) {
+        if (mutableOrder.isBuyOrder) {
+            if (buyOrders.remove(mutableOrder)) {
+                bidLevels.reduce(mutableOrder.limitPrice, mutableOrder.remainingVolume, true);
+            }
+        } else {
+            if (sellOrders.remove(mutableOrder)) {
+                askLevels.reduce(mutableOrder.limitPrice, mutableOrder.remainingVolume, true);
+            }
+        }
+    }
+
     /***
      * Attempt to match a newly submitted buy order against existing sell order(s).
      * @param buyOrder New buy order.
@@ -163,6 +349,9 @@ public class OrderBook {
             buyOrder.cost += sellOrder.limitPrice * volume;
             sellOrder.cost += sellOrder.limitPrice * volume;
 
+            tradeTape.publish(sellOrder.limitPrice, volume, buyOrder.orderId, sellOrder.orderId, TradeTape.TAKER_BUY);
+            askLevels.reduce(sellOrder.limitPrice, volume, sellOrder.remainingVolume == 0);
+
             if (sellOrder.remainingVolume == 0) {
                 sellOrders.remove(sellOrder);
                 addToHistory(sellOrder);
@@ -176,6 +365,7 @@ public class OrderBook {
 
         if (buyOrder.remainingVolume > 0) {
             buyOrders.add(buyOrder);
+            bidLevels.add(buyOrder.limitPrice, buyOrder.remainingVolume);
         }
     }
 
@@ -200,6 +390,9 @@ public class OrderBook {
             sellOrder.cost += buyOrder.limitPrice * volume;
             buyOrder.cost += buyOrder.limitPrice * volume;
 
+            tradeTape.publish(buyOrder.limitPrice, volume, buyOrder.orderId, sellOrder.orderId, TradeTape.TAKER_SELL);
+            bidLevels.reduce(buyOrder.limitPrice, volume, buyOrder.remainingVolume == 0);
+
             if (buyOrder.remainingVolume == 0) {
                 buyOrders.remove(buyOrder);
                 addToHistory(buyOrder);
@@ -213,6 +406,7 @@ public class OrderBook {
 
         if (sellOrder.remainingVolume > 0) {
             sellOrders.add(sellOrder);
+            askLevels.add(sellOrder.limitPrice, sellOrder.remainingVolume);
         }
     }
 
@@ -221,7 +415,7 @@ public class OrderBook {
      * recorded.
      * @param mutableOrder Mutable Order.
      */
-    private void addToHistory(MutableOrder mutableOrder) {
+    void addToHistory(MutableOrder mutableOrder) {
         mutableOrder.finishTime = System.currentTimeMillis();
         orderHistory.add(mutableOrder);
     }
@@ -230,12 +424,77 @@ public class OrderBook {
     // Utility Functions
     ///
 
+    /***
+     * Run a query against a consistent view of the book. The query is run optimistically without locking and run again
+     * if the book changed while it ran, so it must not have side effects beyond its result. After
+     * OPTIMISTIC_READ_ATTEMPTS failed attempts it is run once more under the read lock, which bounds how long a query
+     * can be starved by a steady stream of writes at the cost of briefly holding up matching. Queries should copy out
+     * what they need and build responses afterwards, to keep each attempt and any time spent holding the lock short.
+     * @param query Query to run.
+     * @param <T> Query result type.
+     * @return Query result.
+     */
+    <T> T read(Supplier<T> query) {
+        for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) {
+                // A writer holds the lock, give it a chance to finish
+                Thread.yield();
+                continue;
+            }
+
+            try {
+                T result = query.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    // Failed against a consistent book, so it wasn't caused by a change
+                    throw e;
+                }
+            }
+        }
+
+        long stamp = lock.readLock();
+        try {
+            return query.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /***
+     * Run a query with no result against a consistent view of the book, as above.
+     * @param query Query to run.
+     */
+    void read(Runnable query) {
+        read(() -> {
+            query.run();
+            return null;
+        });
+    }
+
+    /***
+     * Converts a copied price level to a protobuf depth level.
+     * @param snapshot Copied price levels.
+     * @param index Index of the level in the copy.
+     * @return Protobuf DepthLevel.
+     */
+    private static DepthLevel makeDepthLevel(PriceLevels.Snapshot snapshot, int index) {
+        return DepthLevel.newBuilder()
+                .setPrice(snapshot.prices[index])
+                .setVolume(snapshot.volumes[index])
+                .setOrderCount(snapshot.orderCounts[index])
+                .build();
+    }
+
     /***
      * Converts a mutable order to a protobuf order.
      * @param mutableOrder Mutable order.
      * @return Protobuf order.
      */
-    private Order mutableOrderToOrder(MutableOrder mutableOrder) {
+    Order mutableOrderToOrder(MutableOrder mutableOrder) {
         return Order.newBuilder()
                 .setOrderId(mutableOrder.orderId)
                 .setCustomerId(mutableOrder.customerId)
@@ -0,0 +1,132 @@
+package com.example.grpc;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Compares round trip latency of order entry through gRPC and through the binary protocol. Starts both servers
+ * in-process against one OrderManager, then times submitOrder round trips from one client of each kind. Buys and sells
+ * alternate at the same price so the book stays small.
+ */
+public class OrderEntryBenchmark {
+    @Parameter(names={"--iterations", "-n"})
+    private int iterations = 100_000;
+
+    @Parameter(names={"--warmupIterations", "-w"})
+    private int warmupIterations = 50_000;
+
+    @Parameter(names={"--grpcPort"})
+    private int grpcPort = 8090;
+
+    @Parameter(names={"--binaryPort"})
+    private int binaryPort = 8091;
+
+    public static void main(String... argv) throws IOException, InterruptedException {
+        OrderEntryBenchmark orderEntryBenchmark = new OrderEntryBenchmark();
+        JCommander.newBuilder()
+                .addObject(orderEntryBenchmark)
+                .build()
+                .parse(argv);
+        orderEntryBenchmark.run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        OrderManager orderManager = new OrderManager();
+
+        Server server = ServerBuilder
+                .forPort(grpcPort)
+                .addService(new OrderMatcherServiceImpl(orderManager))
+                .build()
+                .start();
+        BinaryOrderEntryServer binaryOrderEntryServer = new BinaryOrderEntryServer(orderManager, binaryPort);
+        binaryOrderEntryServer.start();
+
+        ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", grpcPort)
+                .usePlaintext()
+                .build();
+        OrderMatcherServiceGrpc.OrderMatcherServiceBlockingStub stub = OrderMatcherServiceGrpc.newBlockingStub(channel);
+
+        try (BinaryOrderEntryClient binaryOrderEntryClient = new BinaryOrderEntryClient("localhost", binaryPort)) {
+            runGrpc(stub, warmupIterations);
+            report("gRPC", runGrpc(stub, iterations));
+
+            runBinary(binaryOrderEntryClient, warmupIterations);
+            report("Binary", runBinary(binaryOrderEntryClient, iterations));
+        } finally {
+            channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+            binaryOrderEntryServer.stop();
+            server.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /***
+     * Time submitOrder round trips through gRPC.
+     * @param stub gRPC stub.
+     * @param count Number of round trips.
+     * @return Round trip latencies in nanoseconds.
+     */
+    private static long[] runGrpc(OrderMatcherServiceGrpc.OrderMatcherServiceBlockingStub stub, int count) {
+        long[] latencies = new long[count];
+        for (int i = 0; i < count; i++) {
+            SubmitOrderRequest submitOrderRequest = SubmitOrderRequest.newBuilder()
+                    .setCustomerId(1)
+                    .setTicker(Ticker.BTC_USD)
+                    .setOrderDirection((i % 2 == 0) ? OrderDirection.BUY : OrderDirection.SELL)
+                    .setOrderType(OrderType.LIMIT)
+                    .setLimitPrice(10000)
+                    .setVolume(1)
+                    .build();
+
+            long start = System.nanoTime();
+            stub.submitOrder(submitOrderRequest);
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    /***
+     * Time submitOrder round trips through the binary protocol.
+     * @param binaryOrderEntryClient Binary protocol client.
+     * @param count Number of round trips.
+     * @return Round trip latencies in nanoseconds.
+     * @throws IOException On connection error.
+     */
+    private static long[] runBinary(BinaryOrderEntryClient binaryOrderEntryClient, int count) throws IOException {
+        long[] latencies = new long[count];
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            binaryOrderEntryClient.submitOrder(1, Ticker.BTC_USD,
+                    (i % 2 == 0) ? OrderDirection.BUY : OrderDirection.SELL, OrderType.LIMIT, 10000, 1);
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    private static void report(String name, long[] latencies) {
+        long total = 0;
+        for (long latency: latencies) {
+            total += latency;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("%-8s mean %8.1fus  p50 %8.1fus  p99 %8.1fus  p99.9 %8.1fus  %10.0f round trips/s%n",
+                name,
+                total / 1000.0 / latencies.length,
+                percentile(latencies, 0.50) / 1000.0,
+                percentile(latencies, 0.99) / 1000.0,
+                percentile(latencies, 0.999) / 1000.0,
+                latencies.length / (total / 1e9));
+    }
+
+    private static long percentile(long[] sortedLatencies, double percentile) {
+        return sortedLatencies[(int) Math.min(sortedLatencies.length - 1, sortedLatencies.length * percentile)];
+    }
+}
@@ -1,26 +1,87 @@
 package com.example.grpc;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /***
  * High-level manager of all orders and order-related functionality. Contains order books for all
  * tickers and routes incoming order-related operations to the correct order book.
+ *
+ * Called concurrently from many gRPC threads. The order books do their own locking.
  */
 public class OrderManager {
-    Map<Ticker, OrderBook> tickerToOrderBookMap = new HashMap<>();
-    Map<Long, OrderBook> orderIdToOrderBookMap = new HashMap<>();
+    private static final Logger LOGGER = Logger.getLogger(OrderManager.class.getName());
+
+    /**
+     * Only written in the constructor.
+     */
+    final Map<Ticker, OrderBook> tickerToOrderBookMap = new HashMap<>();
+
+    final Map<Long, OrderBook> orderIdToOrderBookMap = new ConcurrentHashMap<>();
 
     private AtomicLong orderCount = new AtomicLong(0);
 
+    /**
+     * Runs the periodic auctions of order books which use batch auction matching. Only created if there are any.
+     */
+    private ScheduledExecutorService auctionScheduler;
+
+    /**
+     * Rolls the trade tapes of all order books up into bars on its own thread.
+     */
+    private BarAggregator barAggregator;
+
     /***
-     * Constructor.
+     * Constructor. All tickers use continuous matching.
      */
     public OrderManager() {
+        this(Collections.emptyMap());
+    }
+
+    /***
+     * Constructor.
+     * @param batchAuctionIntervals Auction interval in milliseconds for each ticker which should use batch auction
+     *                              matching. All other tickers use continuous matching.
+     */
+    public OrderManager(Map<Ticker, Long> batchAuctionIntervals) {
         // Create blank order books for all the tickers
         for (Ticker ticker: Ticker.values()) {
-            tickerToOrderBookMap.put(ticker, new OrderBook(ticker));
+            if (batchAuctionIntervals.containsKey(ticker)) {
+                BatchAuctionOrderBook orderBook = new BatchAuctionOrderBook(ticker);
+                long intervalMillis = batchAuctionIntervals.get(ticker);
+
+                if (auctionScheduler == null) {
+                    auctionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "batch-auction");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                auctionScheduler.scheduleAtFixedRate(() -> runAuction(orderBook), intervalMillis, intervalMillis,
+                        TimeUnit.MILLISECONDS);
+
+                tickerToOrderBookMap.put(ticker, orderBook);
+            } else {
+                tickerToOrderBookMap.put(ticker, new OrderBook(ticker));
+            }
         }
+
+        List<TradeTape> tradeTapes = new ArrayList<>();
+        for (OrderBook orderBook: tickerToOrderBookMap.values()) {
+            tradeTapes.add(orderBook.tradeTape);
+        }
+        barAggregator = new BarAggregator(tradeTapes, BarSeries.DEFAULT_CAPACITY);
+
+        Thread barAggregatorThread = new Thread(barAggregator, "bar-aggregator");
+        barAggregatorThread.setDaemon(true);
+        barAggregatorThread.start();
     }
 
     /***
@@ -35,11 +96,14 @@ public class OrderManager {
         // Generate a unique order ID
         long orderId = orderCount.incrementAndGet();
 
-        // Associate the order ID with the order book for later retrieval
+        // Attempt to match the order
+        Order order = orderBook.submitOrder(orderId, submitOrderRequest);
+
+        // Associate the order ID with the order book for later retrieval. Only done once the order is in the book so
+        // that an order ID is never found before its order.
         orderIdToOrderBookMap.put(orderId, orderBook);
 
-        // Attempt to match the order
-        return orderBook.submitOrder(orderId, submitOrderRequest);
+        return order;
     }
 
     /***
@@ -68,9 +132,15 @@ public class OrderManager {
      * @return Protobuf OrderStatus if found, otherwise empty optional.
      */
     public Optional<OrderStatus> cancelOrder(OrderReference orderReference) {
-        // Get the order ID
-        long orderId = orderReference.getOrderId();
+        return cancelOrder(orderReference.getOrderId());
+    }
 
+    /***
+     * Cancel an order in the appropriate order book.
+     * @param orderId Order ID.
+     * @return Protobuf OrderStatus if found, otherwise empty optional.
+     */
+    public Optional<OrderStatus> cancelOrder(long orderId) {
         if (!orderIdToOrderBookMap.containsKey(orderId)) {
             return Optional.empty();
         }
@@ -90,4 +160,124 @@ public class OrderManager {
     public Quote getQuote(TickerReference tickerReference) {
         return tickerToOrderBookMap.get(tickerReference.getTicker()).getQuote();
     }
+
+    /***
+     * Retrieve the aggregate volume at the best price levels of a ticker from the appropriate order book.
+     * @param depthRequest Protobuf DepthRequest containing the ticker and number of levels.
+     * @return Depth of the order book.
+     */
+    public Depth getDepth(DepthRequest depthRequest) {
+        return tickerToOrderBookMap.get(depthRequest.getTicker()).getDepth(depthRequest.getLevels());
+    }
+
+    /***
+     * Estimate the fill of a hypothetical market order against the appropriate order book.
+     * @param fillEstimateRequest Protobuf FillEstimateRequest containing the ticker, direction and volume.
+     * @return Fill estimate.
+     */
+    public FillEstimate estimateFill(FillEstimateRequest fillEstimateRequest) {
+        return tickerToOrderBookMap.get(fillEstimateRequest.getTicker())
+                .estimateFill(fillEstimateRequest.getOrderDirection(), fillEstimateRequest.getVolume());
+    }
+
+    ///
+    // Non-Protobuf Functions
+    ///
+
+    /***
+     * Submit an order to the appropriate order book without going through protobuf.
+     * @param customerId Customer ID.
+     * @param ticker Ticker.
+     * @param isBuyOrder True for a buy, false for a sell.
+     * @param isLimitOrder True for a limit order, false for a market order.
+     * @param limitPrice Limit price.
+     * @param volume Volume.
+     * @param onMatched Called with the order straight after matching, while nothing else can change it.
+     * @return Mutable order, after matching.
+     */
+    public MutableOrder submitOrder(long customerId, Ticker ticker, boolean isBuyOrder, boolean isLimitOrder,
+                                    long limitPrice, long volume, Consumer<MutableOrder> onMatched) {
+        // Get the appropriate order book
+        OrderBook orderBook = tickerToOrderBookMap.get(ticker);
+
+        // Generate a unique order ID
+        long orderId = orderCount.incrementAndGet();
+
+        // Attempt to match the order
+        MutableOrder mutableOrder = orderBook.submitOrder(new MutableOrder(orderId, customerId, ticker, isBuyOrder,
+                isLimitOrder, limitPrice, volume), onMatched);
+
+        // Associate the order ID with the order book for later retrieval
+        orderIdToOrderBookMap.put(orderId, orderBook);
+
+        return mutableOrder;
+    }
+
+    /***
+     * Read a consistent view of an order in the appropriate order book without going through protobuf.
+     * @param orderId Order ID.
+     * @param reader Reads the order. May be run more than once so it must not have side effects beyond its result.
+     * @return True if the order was found and read.
+     */
+    public boolean readOrder(long orderId, Consumer<MutableOrder> reader) {
+        OrderBook orderBook = orderIdToOrderBookMap.get(orderId);
+        return (orderBook != null) && orderBook.readOrder(orderId, reader);
+    }
+
+    /***
+     * Stop the background auction and bar aggregation threads. Waits for an auction already under way to finish.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void shutdown() throws InterruptedException {
+        if (auctionScheduler != null) {
+            auctionScheduler.shutdownNow();
+            auctionScheduler.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        barAggregator.stop();
+    }
+
+    /***
+     * Get the order book of a ticker.
+     * @param ticker Ticker.
+     * @return Order book.
+     */
+    public OrderBook getOrderBook(Ticker ticker) {
+        return tickerToOrderBookMap.get(ticker);
+    }
+
+    /***
+     * Get the trade tape of a ticker.
+     * @param ticker Ticker.
+     * @return Trade tape.
+     */
+    public TradeTape getTradeTape(Ticker ticker) {
+        return tickerToOrderBookMap.get(ticker).tradeTape;
+    }
+
+    /***
+     * Get the bars of a ticker at an interval.
+     * @param ticker Ticker.
+     * @param barInterval Bar interval.
+     * @return Bar series.
+     */
+    public BarSeries getBarSeries(Ticker ticker, BarInterval barInterval) {
+        return barAggregator.getBarSeries(ticker, barInterval);
+    }
+
+    ///
+    // Private Functions
+    ///
+
+    /***
+     * Run a scheduled auction. A failure is logged rather than thrown, since a scheduled task which throws is never
+     * run again and the book would collect orders forever.
+     * @param orderBook Batch auction order book.
+     */
+    private static void runAuction(BatchAuctionOrderBook orderBook) {
+        try {
+            orderBook.runAuction();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Batch auction failed for " + orderBook.ticker, e);
+        }
+    }
 }
@@ -3,14 +3,25 @@ package com.example.grpc;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.google.protobuf.Descriptors;
+import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.health.v1.HealthCheckRequest;
+import io.grpc.health.v1.HealthCheckResponse;
+import io.grpc.health.v1.HealthGrpc;
+
+import java.util.Iterator;
 
 public class OrderMatcherClient {
     private enum SubCommand {
         SUBMIT_ORDER,
         RETRIEVE_ORDER,
         CANCEL_ORDER,
-        GET_QUOTE
+        GET_QUOTE,
+        GET_DEPTH,
+        ESTIMATE_FILL,
+        STREAM_TRADES,
+        STREAM_BARS,
+        HEALTH_CHECK
     };
 
     @Parameter(names={"--subCommand", "-sc"})
@@ -37,6 +48,16 @@ public class OrderMatcherClient {
     @Parameter(names={"--volume", "-v"})
     private long volume;
 
+    @Parameter(names={"--levels", "-l"})
+    private int levels;
+
+    @Parameter(names={"--fromSequence", "-fs"})
+    private long fromSequence;
+
+    @Parameter(names={"--barInterval", "-bi"})
+    private BarInterval barInterval = BarInterval.ONE_MINUTE;
+
+    private ManagedChannel channel;
     private OrderMatcherServiceGrpc.OrderMatcherServiceBlockingStub orderMatcherServiceBlockingStub;
 
     public static void main(String... argv) {
@@ -50,10 +71,10 @@ public class OrderMatcherClient {
 
     private void run() {
         // Obtain the stub for the order matching service
-        orderMatcherServiceBlockingStub =
-                OrderMatcherServiceGrpc.newBlockingStub(ManagedChannelBuilder.forAddress("localhost", 8080)
+        channel = ManagedChannelBuilder.forAddress("localhost", 8080)
                 .usePlaintext()
-                .build());
+                .build();
+        orderMatcherServiceBlockingStub = OrderMatcherServiceGrpc.newBlockingStub(channel);
 
         switch(subCommand) {
             case SUBMIT_ORDER:
@@ -71,6 +92,26 @@ public class OrderMatcherClient {
             case GET_QUOTE:
                 getQuote();
                 break;
+
+            case GET_DEPTH:
+                getDepth();
+                break;
+
+            case ESTIMATE_FILL:
+                estimateFill();
+                break;
+
+            case STREAM_TRADES:
+                streamTrades();
+                break;
+
+            case STREAM_BARS:
+                streamBars();
+                break;
+
+            case HEALTH_CHECK:
+                healthCheck();
+                break;
         }
     }
 
@@ -118,4 +159,54 @@ public class OrderMatcherClient {
         Quote quote = orderMatcherServiceBlockingStub.getQuote(tickerReference);
         System.out.println(quote);
     }
+
+    private void getDepth() {
+        DepthRequest depthRequest = DepthRequest.newBuilder()
+                .setTicker(ticker)
+                .setLevels(levels)
+                .build();
+        Depth depth = orderMatcherServiceBlockingStub.getDepth(depthRequest);
+        System.out.println(depth);
+    }
+
+    private void estimateFill() {
+        FillEstimateRequest fillEstimateRequest = FillEstimateRequest.newBuilder()
+                .setTicker(ticker)
+                .setOrderDirection(orderDirection)
+                .setVolume(volume)
+                .build();
+        FillEstimate fillEstimate = orderMatcherServiceBlockingStub.estimateFill(fillEstimateRequest);
+        System.out.println(fillEstimate);
+    }
+
+    private void streamTrades() {
+        TradeStreamRequest tradeStreamRequest = TradeStreamRequest.newBuilder()
+                .setTicker(ticker)
+                .setFromSequence(fromSequence)
+                .build();
+        Iterator<Trade> trades = orderMatcherServiceBlockingStub.streamTrades(tradeStreamRequest);
+        while (trades.hasNext()) {
+            System.out.println(trades.next());
+        }
+    }
+
+    private void streamBars() {
+        BarStreamRequest barStreamRequest = BarStreamRequest.newBuilder()
+                .setTicker(ticker)
+                .setInterval(barInterval)
+                .setFromSequence(fromSequence)
+                .build();
+        Iterator<Bar> bars = orderMatcherServiceBlockingStub.streamBars(barStreamRequest);
+        while (bars.hasNext()) {
+            System.out.println(bars.next());
+        }
+    }
+
+    private void healthCheck() {
+        HealthCheckRequest healthCheckRequest = HealthCheckRequest.newBuilder()
+                .setService(OrderMatcherServiceGrpc.SERVICE_NAME)
+                .build();
+        HealthCheckResponse healthCheckResponse = HealthGrpc.newBlockingStub(channel).check(healthCheckRequest);
+        System.out.println(healthCheckResponse.getStatus());
+    }
 }
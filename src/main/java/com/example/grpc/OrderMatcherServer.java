@@ -1,22 +1,112 @@
 package com.example.grpc;
 
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
+import io.grpc.services.HealthStatusManager;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class OrderMatcherServer {
-    public static void main(String[] args) throws IOException, InterruptedException {
+    private static final Logger LOGGER = Logger.getLogger(OrderMatcherServer.class.getName());
+
+    @Parameter(names={"--batchAuction", "-ba"},
+            description="Use batch auction matching for a ticker, as TICKER:INTERVAL_MILLIS. May be repeated.")
+    private List<String> batchAuctions = new ArrayList<>();
+
+    @Parameter(names={"--binaryPort", "-bp"},
+            description="Also accept orders over the binary order entry protocol on this TCP port. 0 disables.")
+    private int binaryPort = 0;
+
+    @Parameter(names={"--warmUpMillis", "-wu"},
+            description="Longest time to spend warming up the JIT before reporting ready. Warm-up ends sooner once " +
+                    "latency is steady. 0 skips warm-up.")
+    private long warmUpMillis = 30_000;
+
+    public static void main(String[] argv) throws IOException, InterruptedException {
+        OrderMatcherServer orderMatcherServer = new OrderMatcherServer();
+        JCommander.newBuilder()
+                .addObject(orderMatcherServer)
+                .build()
+                .parse(argv);
+        orderMatcherServer.run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        OrderManager orderManager = new OrderManager(parseBatchAuctions());
+
+        // Health checks are answered straight away, but orders are only accepted once warmed up
+        HealthStatusManager healthStatusManager = new HealthStatusManager();
+        ReadinessGate readinessGate = new ReadinessGate(healthStatusManager, OrderMatcherServiceGrpc.SERVICE_NAME);
 
         Server server = ServerBuilder
                 .forPort(8080)
-                .addService(new OrderMatcherServiceImpl())
+                .addService(ServerInterceptors.intercept(new OrderMatcherServiceImpl(orderManager), readinessGate))
+                .addService(healthStatusManager.getHealthService())
                 .build();
 
         server.start();
 
+        if (warmUpMillis > 0) {
+            WarmUp warmUp = new WarmUp(warmUpMillis, binaryPort != 0);
+            try {
+                warmUp.run();
+                System.out.println(warmUp.summary());
+            } catch (IOException | RuntimeException e) {
+                // Warm-up only makes the first orders faster, so a failure is no reason not to serve
+                LOGGER.log(Level.WARNING, "Warm-up failed, accepting orders anyway. " + warmUp.summary(), e);
+            }
+        }
+
+        if (binaryPort != 0) {
+            new BinaryOrderEntryServer(orderManager, binaryPort).start();
+        }
+
+        readinessGate.open();
+
         System.out.println("Server Started\n");
         server.awaitTermination();
     }
+
+    /***
+     * Parse the batch auction arguments into a map of ticker to auction interval.
+     * @return Auction interval in milliseconds for each batch auction ticker.
+     */
+    private Map<Ticker, Long> parseBatchAuctions() {
+        Map<Ticker, Long> batchAuctionIntervals = new EnumMap<>(Ticker.class);
+        for (String batchAuction: batchAuctions) {
+            String[] parts = batchAuction.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected TICKER:INTERVAL_MILLIS but got " + batchAuction);
+            }
+
+            Ticker ticker;
+            long intervalMillis;
+            try {
+                ticker = Ticker.valueOf(parts[0]);
+                intervalMillis = Long.parseLong(parts[1]);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Expected TICKER:INTERVAL_MILLIS but got " + batchAuction, e);
+            }
+
+            if (ticker == Ticker.UNRECOGNIZED) {
+                throw new IllegalArgumentException("Unknown ticker in batch auction " + batchAuction);
+            }
+            if (intervalMillis <= 0) {
+                throw new IllegalArgumentException("Auction interval must be positive in batch auction " +
+                        batchAuction);
+            }
+            batchAuctionIntervals.put(ticker, intervalMillis);
+        }
+        return batchAuctionIntervals;
+    }
 }
 
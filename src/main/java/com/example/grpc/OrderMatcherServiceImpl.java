@@ -1,11 +1,25 @@
 package com.example.grpc;
 
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 
 import java.util.Optional;
 
 class OrderMatcherServiceImpl extends OrderMatcherServiceGrpc.OrderMatcherServiceImplBase {
-    OrderManager orderManager = new OrderManager();
+    OrderManager orderManager;
+
+    /**
+     * Delivers the trade and bar streams, so that they don't hold on to gRPC threads.
+     */
+    private final StreamFanOut streamFanOut = new StreamFanOut();
+
+    /***
+     * Constructor.
+     * @param orderManager Order manager which all requests are routed to.
+     */
+    OrderMatcherServiceImpl(OrderManager orderManager) {
+        this.orderManager = orderManager;
+    }
 
     /**
      * SubmitOrder submits an order to the matching engine. To make the system as fast as possible, the
@@ -60,6 +74,93 @@ class OrderMatcherServiceImpl extends OrderMatcherServiceGrpc.OrderMatcherServic
         responseObserver.onCompleted();
     }
 
+    /**
+     * Gets the aggregate volume at the best price levels on each side of a ticker's order book
+     * @param depthRequest - DepthRequest which contains the ticker and how many levels to return
+     * @param responseObserver - StreamObserver which is notified when the depth is available
+     */
+    @Override
+    public void getDepth(DepthRequest depthRequest, StreamObserver<Depth> responseObserver) {
+        if (depthRequest.getLevels() < 0) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Levels must not be negative: " + depthRequest.getLevels())
+                    .asRuntimeException());
+            return;
+        }
+
+        responseObserver.onNext(orderManager.getDepth(depthRequest));
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * Estimates the VWAP and worst price of a market order without submitting it
+     * @param fillEstimateRequest - FillEstimateRequest which contains the ticker, direction and volume of the order
+     * @param responseObserver - StreamObserver which is notified when the estimate is available
+     */
+    @Override
+    public void estimateFill(FillEstimateRequest fillEstimateRequest, StreamObserver<FillEstimate> responseObserver) {
+        if (fillEstimateRequest.getVolume() <= 0) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Volume must be positive: " + fillEstimateRequest.getVolume())
+                    .asRuntimeException());
+            return;
+        }
+
+        responseObserver.onNext(orderManager.estimateFill(fillEstimateRequest));
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * Streams the trades of a ticker as they happen, optionally replaying retained trades first. If the client falls
+     * so far behind that trades are no longer retained, the stream skips ahead to the oldest retained trade.
+     *
+     * @param tradeStreamRequest - TradeStreamRequest with the ticker and the sequence to replay from
+     * @param responseObserver - StreamObserver which is notified of each trade until the client cancels
+     */
+    @Override
+    public void streamTrades(TradeStreamRequest tradeStreamRequest, StreamObserver<Trade> responseObserver) {
+        if (tradeStreamRequest.getTicker() == Ticker.UNRECOGNIZED) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Unknown ticker: " + tradeStreamRequest.getTickerValue())
+                    .asRuntimeException());
+            return;
+        }
+
+        TradeTape tradeTape = orderManager.getTradeTape(tradeStreamRequest.getTicker());
+        TradeTape.Entry entry = new TradeTape.Entry();
+
+        streamFanOut.subscribe(responseObserver, tradeStreamRequest.getFromSequence(), tradeTape::lastSequence,
+                tradeTape::oldestSequence, sequence -> tradeTape.readTrade(sequence, entry));
+    }
+
+    /**
+     * Streams the completed OHLCV bars of a ticker at an interval, optionally replaying retained bars first.
+     *
+     * @param barStreamRequest - BarStreamRequest with the ticker, interval and the sequence to replay from
+     * @param responseObserver - StreamObserver which is notified of each completed bar until the client cancels
+     */
+    @Override
+    public void streamBars(BarStreamRequest barStreamRequest, StreamObserver<Bar> responseObserver) {
+        if (barStreamRequest.getTicker() == Ticker.UNRECOGNIZED) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Unknown ticker: " + barStreamRequest.getTickerValue())
+                    .asRuntimeException());
+            return;
+        }
+
+        BarSeries barSeries = orderManager.getBarSeries(barStreamRequest.getTicker(), barStreamRequest.getInterval());
+
+        if (barSeries == null) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Unsupported bar interval: " + barStreamRequest.getInterval())
+                    .asRuntimeException());
+            return;
+        }
+
+        streamFanOut.subscribe(responseObserver, barStreamRequest.getFromSequence(), barSeries::lastSequence,
+                barSeries::oldestSequence, barSeries::readBar);
+    }
+
     ///
     // Utility Functions
     ///
@@ -0,0 +1,130 @@
+package com.example.grpc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/***
+ * Aggregate resting volume and order count at each price on one side of an order book, best price first. Kept up to
+ * date incrementally as orders rest, fill and cancel, so depth queries don't have to visit individual orders.
+ *
+ * Only modified under the order book's write lock. Readers may iterate concurrently but must validate what they read
+ * against the order book's lock to be sure it is consistent.
+ */
+class PriceLevels {
+    private final ConcurrentSkipListMap<Long, PriceLevel> levels;
+
+    /***
+     * Constructor.
+     * @param isBuySide True for bids (highest price first), false for asks (lowest price first).
+     */
+    PriceLevels(boolean isBuySide) {
+        Comparator<Long> comparator = isBuySide ? Collections.reverseOrder() : Comparator.naturalOrder();
+        levels = new ConcurrentSkipListMap<>(comparator);
+    }
+
+    /***
+     * Add a newly resting order.
+     * @param price Limit price of the order.
+     * @param volume Remaining volume of the order.
+     */
+    void add(long price, long volume) {
+        PriceLevel priceLevel = levels.get(price);
+        if (priceLevel == null) {
+            priceLevel = new PriceLevel(price);
+            levels.put(price, priceLevel);
+        }
+        priceLevel.volume += volume;
+        priceLevel.orderCount++;
+    }
+
+    /***
+     * Remove volume from a level, after a fill or cancellation.
+     * @param price Limit price of the order.
+     * @param volume Volume removed.
+     * @param orderRemoved True if the order is no longer resting.
+     */
+    void reduce(long price, long volume, boolean orderRemoved) {
+        PriceLevel priceLevel = levels.get(price);
+        priceLevel.volume -= volume;
+        if (orderRemoved) {
+            priceLevel.orderCount--;
+        }
+        if (priceLevel.orderCount == 0) {
+            levels.remove(price);
+        }
+    }
+
+    /***
+     * @return Best price, zero if there are no levels.
+     */
+    long bestPrice() {
+        Map.Entry<Long, PriceLevel> best = levels.firstEntry();
+        return (best != null) ? best.getKey() : 0;
+    }
+
+    /***
+     * Copy the best levels into a snapshot, overwriting what it held.
+     * @param snapshot Snapshot to copy into.
+     * @param maxLevels Maximum number of levels, zero for all of them.
+     * @param maxVolume Stop once the levels copied hold at least this much volume.
+     */
+    void copyTo(Snapshot snapshot, int maxLevels, long maxVolume) {
+        snapshot.size = 0;
+        long volume = 0;
+        for (PriceLevel priceLevel: levels.values()) {
+            if ((maxLevels > 0 && snapshot.size == maxLevels) || volume >= maxVolume) {
+                break;
+            }
+            snapshot.add(priceLevel.price, priceLevel.volume, priceLevel.orderCount);
+            volume += priceLevel.volume;
+        }
+    }
+
+    /***
+     * Plain copy of some levels, best price first. Reused between queries so that copying doesn't allocate once the
+     * arrays have grown to fit.
+     */
+    static class Snapshot {
+        private static final int INITIAL_CAPACITY = 16;
+
+        long[] prices = new long[INITIAL_CAPACITY];
+        long[] volumes = new long[INITIAL_CAPACITY];
+        int[] orderCounts = new int[INITIAL_CAPACITY];
+        int size;
+
+        /***
+         * @return Best price, zero if there are no levels.
+         */
+        long bestPrice() {
+            return (size > 0) ? prices[0] : 0;
+        }
+
+        private void add(long price, long volume, int orderCount) {
+            if (size == prices.length) {
+                prices = Arrays.copyOf(prices, size * 2);
+                volumes = Arrays.copyOf(volumes, size * 2);
+                orderCounts = Arrays.copyOf(orderCounts, size * 2);
+            }
+            prices[size] = price;
+            volumes[size] = volume;
+            orderCounts[size] = orderCount;
+            size++;
+        }
+    }
+
+    /***
+     * Aggregate of all resting orders at one price.
+     */
+    static class PriceLevel {
+        final long price;
+        long volume;
+        int orderCount;
+
+        PriceLevel(long price) {
+            this.price = price;
+        }
+    }
+}
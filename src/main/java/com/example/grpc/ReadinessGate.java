@@ -0,0 +1,53 @@
+package com.example.grpc;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.health.v1.HealthCheckResponse.ServingStatus;
+import io.grpc.services.HealthStatusManager;
+
+/***
+ * Keeps a service closed until the server is ready. Until then the gRPC health service reports NOT_SERVING, and calls
+ * which arrive anyway are rejected with UNAVAILABLE so that clients retry elsewhere instead of waiting on a server
+ * which is still warming up.
+ */
+class ReadinessGate implements ServerInterceptor {
+    private final HealthStatusManager healthStatusManager;
+    private final String serviceName;
+    private volatile boolean isOpen = false;
+
+    /***
+     * Constructor. Starts closed.
+     * @param healthStatusManager Health status manager whose health service is registered with the server.
+     * @param serviceName Full name of the gated service.
+     */
+    ReadinessGate(HealthStatusManager healthStatusManager, String serviceName) {
+        this.healthStatusManager = healthStatusManager;
+        this.serviceName = serviceName;
+
+        healthStatusManager.setStatus(HealthStatusManager.SERVICE_NAME_ALL_SERVICES, ServingStatus.NOT_SERVING);
+        healthStatusManager.setStatus(serviceName, ServingStatus.NOT_SERVING);
+    }
+
+    /***
+     * Let calls through and report SERVING.
+     */
+    void open() {
+        isOpen = true;
+
+        healthStatusManager.setStatus(serviceName, ServingStatus.SERVING);
+        healthStatusManager.setStatus(HealthStatusManager.SERVICE_NAME_ALL_SERVICES, ServingStatus.SERVING);
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (!isOpen) {
+            call.close(Status.UNAVAILABLE.withDescription("Server is not ready"), new Metadata());
+            return new ServerCall.Listener<ReqT>() {};
+        }
+        return next.startCall(call, headers);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.grpc;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/***
+ * A fixed capacity ring of entries, each made up of a fixed number of long fields and identified by a sequence number
+ * starting at 1. All entries live in one preallocated array so publishing never allocates, and readers never block the
+ * writer: they read the fields of an entry and then check that it wasn't overwritten while they were reading.
+ *
+ * Only one thread may write at a time. Any number of threads may read.
+ */
+class RingBuffer {
+    private final int capacity;
+    private final int fieldsPerEntry;
+    private final AtomicLongArray entries;
+
+    /**
+     * Sequence of the entry currently being written, and of the last entry fully written. Readers use the former to
+     * detect overwrites and the latter to know what is safe to read.
+     */
+    private volatile long claimedSequence = 0;
+    private volatile long publishedSequence = 0;
+
+    /***
+     * Constructor.
+     * @param capacity Number of entries retained. Must be a power of two.
+     * @param fieldsPerEntry Number of long fields in each entry.
+     */
+    RingBuffer(int capacity, int fieldsPerEntry) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        this.fieldsPerEntry = fieldsPerEntry;
+        this.entries = new AtomicLongArray(capacity * fieldsPerEntry);
+    }
+
+    ///
+    // Writer Functions
+    ///
+
+    /***
+     * Start writing the next entry. Its fields are then written with `set` and made visible with `publish`.
+     * @return Sequence of the new entry.
+     */
+    long claim() {
+        long sequence = publishedSequence + 1;
+        claimedSequence = sequence;
+        return sequence;
+    }
+
+    /***
+     * Write one field of a claimed entry.
+     * @param sequence Sequence returned by `claim`.
+     * @param field Field index.
+     * @param value Field value.
+     */
+    void set(long sequence, int field, long value) {
+        entries.set(index(sequence, field), value);
+    }
+
+    /***
+     * Make a claimed entry visible to readers.
+     * @param sequence Sequence returned by `claim`.
+     */
+    void publish(long sequence) {
+        publishedSequence = sequence;
+    }
+
+    ///
+    // Reader Functions
+    ///
+
+    /***
+     * @return Sequence of the newest readable entry, zero if there are none.
+     */
+    long lastSequence() {
+        return publishedSequence;
+    }
+
+    /***
+     * @return Sequence of the oldest entry which has not been overwritten.
+     */
+    long oldestSequence() {
+        return Math.max(1, claimedSequence - capacity + 1);
+    }
+
+    /***
+     * Read one field of an entry. The value may be garbage unless `isIntact` returns true afterwards.
+     * @param sequence Entry sequence, no greater than `lastSequence`.
+     * @param field Field index.
+     * @return Field value.
+     */
+    long get(long sequence, int field) {
+        return entries.get(index(sequence, field));
+    }
+
+    /***
+     * Check that an entry had not started to be overwritten by the time its fields were read.
+     * @param sequence Entry sequence.
+     * @return True if the fields read so far are valid.
+     */
+    boolean isIntact(long sequence) {
+        return claimedSequence - sequence < capacity;
+    }
+
+    ///
+    // Utility Functions
+    ///
+
+    private int index(long sequence, int field) {
+        return (int) (sequence & (capacity - 1)) * fieldsPerEntry + field;
+    }
+}
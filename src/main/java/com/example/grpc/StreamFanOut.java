@@ -0,0 +1,177 @@
+package com.example.grpc;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/***
+ * Delivers every trade and bar stream from one thread, so that a subscriber never holds a gRPC executor thread. The
+ * thread is started by the first subscription. It sleeps while there are no subscriptions. Otherwise it checks the
+ * sources of all subscriptions each time a client becomes ready for more, and at least every millisecond.
+ */
+class StreamFanOut implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(StreamFanOut.class.getName());
+
+    /**
+     * How long to sleep when no subscription had anything to send.
+     */
+    private static final long IDLE_NANOS = 1_000_000L;
+
+    /**
+     * Most items sent to one subscription before moving on to the next, so that one replay can't hold up the others.
+     */
+    private static final int MAX_BATCH = 256;
+
+    private final Queue<Subscription<?>> subscriptions = new ConcurrentLinkedQueue<>();
+    private Thread thread;
+
+    /***
+     * Stream sequenced items to a client until it cancels. Must be called from the service method, before it returns.
+     * @param responseObserver Client stream.
+     * @param fromSequence Sequence to replay from, or zero to stream new items only.
+     * @param lastSequence Supplies the latest available sequence.
+     * @param oldestSequence Supplies the oldest retained sequence.
+     * @param read Reads an item by sequence, returning null if it isn't available. Only called on the fan-out thread.
+     * @param <T> Item type.
+     */
+    <T> void subscribe(StreamObserver<T> responseObserver, long fromSequence, LongSupplier lastSequence,
+                       LongSupplier oldestSequence, LongFunction<T> read) {
+        ServerCallStreamObserver<T> serverCallStreamObserver = (ServerCallStreamObserver<T>) responseObserver;
+        long sequence = (fromSequence > 0) ? fromSequence : lastSequence.getAsLong() + 1;
+        Subscription<T> subscription = new Subscription<>(serverCallStreamObserver, sequence, oldestSequence, read);
+
+        serverCallStreamObserver.setOnReadyHandler(this::wake);
+        serverCallStreamObserver.setOnCancelHandler(() -> {
+            subscription.isCancelled = true;
+            wake();
+        });
+
+        subscriptions.add(subscription);
+        start();
+        wake();
+    }
+
+    /***
+     * Deliver until the thread is interrupted.
+     */
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            boolean sentAny = false;
+
+            for (Iterator<Subscription<?>> iterator = subscriptions.iterator(); iterator.hasNext(); ) {
+                Subscription<?> subscription = iterator.next();
+                if (subscription.isCancelled) {
+                    iterator.remove();
+                    continue;
+                }
+
+                try {
+                    sentAny |= subscription.send();
+                } catch (RuntimeException e) {
+                    // End only this stream, the others are still delivered by this thread
+                    LOGGER.log(Level.WARNING, "Failed to deliver stream, ending it", e);
+                    iterator.remove();
+                    subscription.fail(e);
+                }
+            }
+
+            if (subscriptions.isEmpty()) {
+                LockSupport.park(this);
+            } else if (!sentAny) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+    }
+
+    ///
+    // Private Functions
+    ///
+
+    private synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this, "stream-fan-out");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private synchronized void wake() {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * One client stream and where it has got to. Only touched by the fan-out thread, apart from the cancelled flag.
+     */
+    private static class Subscription<T> {
+        private final ServerCallStreamObserver<T> serverCallStreamObserver;
+        private final LongSupplier oldestSequence;
+        private final LongFunction<T> read;
+        private long sequence;
+        volatile boolean isCancelled = false;
+
+        Subscription(ServerCallStreamObserver<T> serverCallStreamObserver, long sequence, LongSupplier oldestSequence,
+                     LongFunction<T> read) {
+            this.serverCallStreamObserver = serverCallStreamObserver;
+            this.sequence = sequence;
+            this.oldestSequence = oldestSequence;
+            this.read = read;
+        }
+
+        /***
+         * Send whatever is available, as far as flow control allows.
+         * @return True if anything was sent.
+         */
+        boolean send() {
+            int sent = 0;
+
+            try {
+                while (sent < MAX_BATCH && serverCallStreamObserver.isReady()) {
+                    // Either the replay starts before what's retained or the client fell behind
+                    sequence = Math.max(sequence, oldestSequence.getAsLong());
+
+                    T item = read.apply(sequence);
+                    if (item == null) {
+                        break;
+                    }
+                    serverCallStreamObserver.onNext(item);
+                    sequence++;
+                    sent++;
+                }
+            } catch (StatusRuntimeException e) {
+                // The client cancelled while an item was being sent
+                isCancelled = true;
+            }
+
+            return sent > 0;
+        }
+
+        /***
+         * End the stream after a delivery failure.
+         * @param cause Delivery failure.
+         */
+        void fail(RuntimeException cause) {
+            isCancelled = true;
+            try {
+                serverCallStreamObserver.onError(Status.INTERNAL
+                        .withDescription("Stream failed")
+                        .withCause(cause)
+                        .asRuntimeException());
+            } catch (RuntimeException e) {
+                // The call is already closed
+            }
+        }
+    }
+}
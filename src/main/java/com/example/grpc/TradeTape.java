@@ -0,0 +1,146 @@
+package com.example.grpc;
+
+/***
+ * The trade tape of one ticker. Every execution in the order book is published here with an increasing sequence
+ * number. The most recent trades are retained in a ring buffer so that subscribers can replay from a sequence number.
+ */
+public class TradeTape {
+    static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /**
+     * Which side crossed the spread. Trades from batch auctions have no taker.
+     */
+    static final int TAKER_NONE = 0;
+    static final int TAKER_BUY = 1;
+    static final int TAKER_SELL = 2;
+
+    private static final int TIMESTAMP = 0;
+    private static final int PRICE = 1;
+    private static final int VOLUME = 2;
+    private static final int BUY_ORDER_ID = 3;
+    private static final int SELL_ORDER_ID = 4;
+    private static final int TAKER = 5;
+    private static final int FIELDS = 6;
+
+    /**
+     * The ticker to which this tape pertains
+     */
+    final Ticker ticker;
+
+    private final RingBuffer trades;
+
+    /***
+     * Constructor.
+     * @param ticker Ticker of this tape.
+     * @param capacity Number of trades retained for replay. Must be a power of two.
+     */
+    public TradeTape(Ticker ticker, int capacity) {
+        this.ticker = ticker;
+        this.trades = new RingBuffer(capacity, FIELDS);
+    }
+
+    /***
+     * Publish a trade to the tape.
+     * @param price Execution price.
+     * @param volume Execution volume.
+     * @param buyOrderId Order ID of the buyer.
+     * @param sellOrderId Order ID of the seller.
+     * @param taker One of TAKER_NONE, TAKER_BUY or TAKER_SELL.
+     */
+    void publish(long price, long volume, long buyOrderId, long sellOrderId, int taker) {
+        publish(System.currentTimeMillis(), price, volume, buyOrderId, sellOrderId, taker);
+    }
+
+    /***
+     * Publish a trade to the tape with a given timestamp.
+     * @param timestamp Execution time in milliseconds.
+     * @param price Execution price.
+     * @param volume Execution volume.
+     * @param buyOrderId Order ID of the buyer.
+     * @param sellOrderId Order ID of the seller.
+     * @param taker One of TAKER_NONE, TAKER_BUY or TAKER_SELL.
+     */
+    synchronized void publish(long timestamp, long price, long volume, long buyOrderId, long sellOrderId, int taker) {
+        long sequence = trades.claim();
+        trades.set(sequence, TIMESTAMP, timestamp);
+        trades.set(sequence, PRICE, price);
+        trades.set(sequence, VOLUME, volume);
+        trades.set(sequence, BUY_ORDER_ID, buyOrderId);
+        trades.set(sequence, SELL_ORDER_ID, sellOrderId);
+        trades.set(sequence, TAKER, taker);
+        trades.publish(sequence);
+    }
+
+    /***
+     * @return Sequence of the latest trade, zero if there have been none.
+     */
+    public long lastSequence() {
+        return trades.lastSequence();
+    }
+
+    /***
+     * @return Sequence of the oldest trade still available for replay.
+     */
+    public long oldestSequence() {
+        return trades.oldestSequence();
+    }
+
+    /***
+     * Read a trade off the tape into a reusable entry.
+     * @param sequence Trade sequence.
+     * @param entry Entry to read into.
+     * @return True if the trade was read, false if it hasn't happened yet or is no longer retained.
+     */
+    public boolean read(long sequence, Entry entry) {
+        if (sequence > trades.lastSequence()) {
+            return false;
+        }
+
+        entry.sequence = sequence;
+        entry.timestamp = trades.get(sequence, TIMESTAMP);
+        entry.price = trades.get(sequence, PRICE);
+        entry.volume = trades.get(sequence, VOLUME);
+        entry.buyOrderId = trades.get(sequence, BUY_ORDER_ID);
+        entry.sellOrderId = trades.get(sequence, SELL_ORDER_ID);
+        entry.taker = (int) trades.get(sequence, TAKER);
+
+        return trades.isIntact(sequence);
+    }
+
+    /***
+     * Read a trade off the tape as a protobuf Trade.
+     * @param sequence Trade sequence.
+     * @param entry Reusable entry to read into first.
+     * @return Protobuf Trade, or null if the trade hasn't happened yet or is no longer retained.
+     */
+    public Trade readTrade(long sequence, Entry entry) {
+        if (!read(sequence, entry)) {
+            return null;
+        }
+
+        return Trade.newBuilder()
+                .setSequence(entry.sequence)
+                .setTicker(ticker)
+                .setTimestamp(entry.timestamp)
+                .setPrice(entry.price)
+                .setVolume(entry.volume)
+                .setBuyOrderId(entry.buyOrderId)
+                .setSellOrderId(entry.sellOrderId)
+                .setTakerDirection(entry.taker == TAKER_SELL ? OrderDirection.SELL : OrderDirection.BUY)
+                .setAuction(entry.taker == TAKER_NONE)
+                .build();
+    }
+
+    /**
+     * A single trade read off the tape. Readers reuse one entry so that reading doesn't allocate.
+     */
+    public static class Entry {
+        public long sequence;
+        public long timestamp;
+        public long price;
+        public long volume;
+        public long buyOrderId;
+        public long sellOrderId;
+        public int taker;
+    }
+}
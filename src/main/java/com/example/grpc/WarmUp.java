@@ -0,0 +1,295 @@
+package com.example.grpc;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.util.MutableHandlerRegistry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/***
+ * Warms up the JIT before the server takes traffic. A synthetic workload is run in rounds through the same code as live
+ * requests: a gRPC client over a loopback connection, so protobuf marshalling and the HTTP/2 transport are exercised
+ * on both sides, OrderManager, continuous and batch auction matching and, when it is enabled, the binary protocol
+ * through a loopback BinaryOrderEntryServer. Every round uses a throwaway OrderManager so the live order books are
+ * never touched.
+ *
+ * Each round is timed. Warm-up stops once the last few rounds take about the same time, and the time taken to get
+ * there is kept so the warm-up length can be tuned.
+ */
+class WarmUp {
+    static final int OPERATIONS_PER_ROUND = 5_000;
+
+    /**
+     * Steady state is reached when this many consecutive rounds are all within TOLERANCE of the fastest of them.
+     */
+    static final int STEADY_ROUNDS = 5;
+    static final double TOLERANCE = 0.10;
+
+    private static final Ticker[] TICKERS = {Ticker.BTC_USD, Ticker.EUR_USD, Ticker.AAPL};
+    private static final Ticker BATCH_AUCTION_TICKER = Ticker.FB;
+    private static final long CUSTOMER_ID = 1;
+    private static final long MID_PRICE = 10000;
+
+    private final long maxNanos;
+    private final boolean useBinaryProtocol;
+    private final Random random = new Random(1);
+
+    // Kept so the JIT can't discard the work that produced it
+    private Object lastResponse;
+
+    private final List<Long> roundNanos = new ArrayList<>();
+
+    /**
+     * Time from the start of warm-up until latency settled, -1 if it never did.
+     */
+    private long timeToSteadyStateNanos = -1;
+
+    /***
+     * Constructor.
+     * @param maxMillis Longest time to keep warming up if steady state isn't reached.
+     * @param useBinaryProtocol True to also warm up the binary order entry protocol.
+     */
+    WarmUp(long maxMillis, boolean useBinaryProtocol) {
+        this.maxNanos = maxMillis * 1_000_000L;
+        this.useBinaryProtocol = useBinaryProtocol;
+    }
+
+    /***
+     * Run rounds until steady state is reached or the time runs out.
+     * @return True if steady state was reached.
+     * @throws IOException If a loopback server can't be started or a loopback call fails.
+     * @throws InterruptedException If interrupted while throwing away an order manager.
+     */
+    boolean run() throws IOException, InterruptedException {
+        // One loopback server and connection for the whole warm-up, each round swaps in a service for its order manager
+        MutableHandlerRegistry serviceRegistry = new MutableHandlerRegistry();
+        Server server = ServerBuilder
+                .forPort(0)
+                .fallbackHandlerRegistry(serviceRegistry)
+                .build()
+                .start();
+        ManagedChannel channel = ManagedChannelBuilder
+                .forAddress("localhost", server.getPort())
+                .usePlaintext()
+                .build();
+
+        try {
+            return runRounds(serviceRegistry, OrderMatcherServiceGrpc.newBlockingStub(channel));
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+        }
+    }
+
+    /***
+     * @return One line summary of the warm-up for the server log.
+     */
+    String summary() {
+        if (roundNanos.isEmpty()) {
+            return "Warm-up did not complete a round";
+        }
+
+        double firstRoundMicros = nanosPerOperation(0) / 1000.0;
+        double lastRoundMicros = nanosPerOperation(roundNanos.size() - 1) / 1000.0;
+
+        if (timeToSteadyStateNanos < 0) {
+            return String.format("Warm-up did not reach steady state in %d rounds: %.2fus/op first round, " +
+                    "%.2fus/op last round", roundNanos.size(), firstRoundMicros, lastRoundMicros);
+        }
+        return String.format("Warm-up reached steady state after %dms (%d rounds): %.2fus/op first round, " +
+                        "%.2fus/op steady", timeToSteadyStateNanos / 1_000_000, roundNanos.size() - STEADY_ROUNDS,
+                firstRoundMicros, lastRoundMicros);
+    }
+
+    ///
+    // Private Functions
+    ///
+
+    /***
+     * Run rounds, each against a new order manager, until steady state is reached or the time runs out.
+     * @param serviceRegistry Registry the loopback server looks services up in.
+     * @param stub Client of the loopback server.
+     * @return True if steady state was reached.
+     * @throws IOException If a loopback binary server can't be started or a binary call fails.
+     * @throws InterruptedException If interrupted while throwing away an order manager.
+     */
+    private boolean runRounds(MutableHandlerRegistry serviceRegistry,
+                              OrderMatcherServiceGrpc.OrderMatcherServiceBlockingStub stub)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        List<Long> roundStartNanos = new ArrayList<>();
+
+        while (System.nanoTime() - start < maxNanos) {
+            OrderManager orderManager = new OrderManager();
+            serviceRegistry.addService(new OrderMatcherServiceImpl(orderManager));
+            BatchAuctionOrderBook batchAuctionOrderBook = new BatchAuctionOrderBook(BATCH_AUCTION_TICKER);
+
+            BinaryOrderEntryServer binaryServer = null;
+            BinaryOrderEntryClient binaryClient = null;
+            if (useBinaryProtocol) {
+                binaryServer = new BinaryOrderEntryServer(orderManager, 0);
+                binaryServer.start();
+                binaryClient = new BinaryOrderEntryClient("localhost", binaryServer.port());
+            }
+
+            try {
+                long roundStart = System.nanoTime();
+                runRound(stub, binaryClient, batchAuctionOrderBook);
+                roundNanos.add(System.nanoTime() - roundStart);
+                roundStartNanos.add(roundStart - start);
+            } finally {
+                if (binaryServer != null) {
+                    binaryClient.close();
+                    binaryServer.stop();
+                }
+                orderManager.shutdown();
+            }
+
+            if (isSteady()) {
+                // Steady from the first round of the steady run, not from when it was noticed
+                timeToSteadyStateNanos = roundStartNanos.get(roundStartNanos.size() - STEADY_ROUNDS);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /***
+     * Run one round of the synthetic workload. Roughly 40% limit orders, 10% market orders and 50% cancels, retrieves
+     * and queries, around a fixed mid price so that most orders cross.
+     * @param stub Client of the loopback gRPC server.
+     * @param binaryClient Client of the loopback binary server, null if the binary protocol isn't used.
+     * @param batchAuctionOrderBook Throwaway batch auction order book.
+     * @throws IOException If a binary call fails.
+     */
+    private void runRound(OrderMatcherServiceGrpc.OrderMatcherServiceBlockingStub stub,
+                          BinaryOrderEntryClient binaryClient, BatchAuctionOrderBook batchAuctionOrderBook)
+            throws IOException {
+        long lastOrderId = 0;
+
+        for (int i = 0; i < OPERATIONS_PER_ROUND; i++) {
+            Ticker ticker = TICKERS[i % TICKERS.length];
+            long orderId = Math.max(1, lastOrderId - random.nextInt(64));
+
+            switch (i % 12) {
+                case 0:
+                case 1:
+                case 2:
+                case 3:
+                    lastOrderId = stub.submitOrder(makeSubmitOrderRequest(ticker, OrderType.LIMIT)).getOrderId();
+                    break;
+
+                case 4:
+                    lastOrderId = stub.submitOrder(makeSubmitOrderRequest(ticker, OrderType.MARKET)).getOrderId();
+                    break;
+
+                case 5:
+                    lastResponse = stub.cancelOrder(makeOrderReference(orderId));
+                    break;
+
+                case 6:
+                    lastResponse = stub.retrieveOrder(makeOrderReference(orderId));
+                    break;
+
+                case 7:
+                    lastResponse = stub.getQuote(TickerReference.newBuilder()
+                            .setTicker(ticker)
+                            .build());
+                    break;
+
+                case 8:
+                    lastResponse = stub.getDepth(DepthRequest.newBuilder()
+                            .setTicker(ticker)
+                            .setLevels(5)
+                            .build());
+                    break;
+
+                case 9:
+                    lastResponse = stub.estimateFill(FillEstimateRequest.newBuilder()
+                            .setTicker(ticker)
+                            .setOrderDirection(random.nextBoolean() ? OrderDirection.BUY : OrderDirection.SELL)
+                            .setVolume(1 + random.nextInt(50))
+                            .build());
+                    break;
+
+                case 10:
+                    if (binaryClient != null) {
+                        lastOrderId = binaryClient.submitOrder(CUSTOMER_ID, ticker,
+                                random.nextBoolean() ? OrderDirection.BUY : OrderDirection.SELL, OrderType.LIMIT,
+                                randomPrice(), randomVolume()).orderId();
+                    } else {
+                        lastOrderId = stub.submitOrder(makeSubmitOrderRequest(ticker, OrderType.LIMIT)).getOrderId();
+                    }
+                    break;
+
+                default:
+                    if (binaryClient != null) {
+                        lastResponse = binaryClient.retrieveOrder(orderId);
+                        lastResponse = binaryClient.getQuote(ticker);
+                    } else {
+                        lastResponse = stub.retrieveOrder(makeOrderReference(orderId));
+                    }
+                    break;
+            }
+
+            if (i % 4 == 0) {
+                batchAuctionOrderBook.submitOrder(i + 1, makeSubmitOrderRequest(BATCH_AUCTION_TICKER,
+                        (i % 20 == 0) ? OrderType.MARKET : OrderType.LIMIT));
+            }
+            if (i % 100 == 99) {
+                batchAuctionOrderBook.runAuction();
+            }
+        }
+    }
+
+    /***
+     * @return True if the last STEADY_ROUNDS rounds are all within TOLERANCE of the fastest of them.
+     */
+    private boolean isSteady() {
+        if (roundNanos.size() < STEADY_ROUNDS) {
+            return false;
+        }
+
+        long fastest = Long.MAX_VALUE;
+        long slowest = 0;
+        for (long nanos: roundNanos.subList(roundNanos.size() - STEADY_ROUNDS, roundNanos.size())) {
+            fastest = Math.min(fastest, nanos);
+            slowest = Math.max(slowest, nanos);
+        }
+        return slowest <= fastest * (1 + TOLERANCE);
+    }
+
+    private double nanosPerOperation(int round) {
+        return (double) roundNanos.get(round) / OPERATIONS_PER_ROUND;
+    }
+
+    private SubmitOrderRequest makeSubmitOrderRequest(Ticker ticker, OrderType orderType) {
+        return SubmitOrderRequest.newBuilder()
+                .setCustomerId(CUSTOMER_ID)
+                .setTicker(ticker)
+                .setOrderDirection(random.nextBoolean() ? OrderDirection.BUY : OrderDirection.SELL)
+                .setOrderType(orderType)
+                .setLimitPrice((orderType == OrderType.LIMIT) ? randomPrice() : 0)
+                .setVolume(randomVolume())
+                .build();
+    }
+
+    private long randomPrice() {
+        return MID_PRICE + (random.nextInt(11) - 5) * 10;
+    }
+
+    private long randomVolume() {
+        return 1 + random.nextInt(10);
+    }
+
+    private static OrderReference makeOrderReference(long orderId) {
+        return OrderReference.newBuilder()
+                .setOrderId(orderId)
+                .build();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.grpc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BarAggregatorTest {
+    TradeTape tradeTape;
+    BarAggregator barAggregator;
+    BarSeries oneSecondBars;
+
+    @Before
+    public void setup() {
+        tradeTape = new TradeTape(Ticker.BTC_USD, 4);
+        barAggregator = new BarAggregator(Collections.singletonList(tradeTape), 16);
+        oneSecondBars = barAggregator.getBarSeries(Ticker.BTC_USD, BarInterval.ONE_SECOND);
+    }
+
+    @Test
+    public void testBarCompletedAfterLag() {
+        tradeTape.publish(1000, 10000, 1, 1, 1, TradeTape.TAKER_BUY);
+        tradeTape.publish(1500, 10100, 2, 2, 2, TradeTape.TAKER_BUY);
+
+        assertTrue(barAggregator.poll(2000 + BarAggregator.COMPLETION_LAG_MILLIS - 1));
+        assertEquals(0, oneSecondBars.lastSequence());
+
+        assertFalse(barAggregator.poll(2000 + BarAggregator.COMPLETION_LAG_MILLIS));
+        assertEquals(1, oneSecondBars.lastSequence());
+
+        Bar bar = oneSecondBars.readBar(1);
+        assertEquals(1000, bar.getStartTime());
+        assertEquals(10000, bar.getOpen());
+        assertEquals(10100, bar.getHigh());
+        assertEquals(10000, bar.getLow());
+        assertEquals(10100, bar.getClose());
+        assertEquals(3, bar.getVolume());
+        assertEquals(2, bar.getTradeCount());
+
+        // Longer intervals haven't elapsed
+        assertEquals(0, barAggregator.getBarSeries(Ticker.BTC_USD, BarInterval.ONE_MINUTE).lastSequence());
+    }
+
+    @Test
+    public void testTradeWithinLagIsAggregated() {
+        /**
+         * A trade timestamped at the end of an interval which reaches the tape after the interval has ended still makes
+         * it into its bar, as long as it arrives within the completion lag.
+         */
+
+        tradeTape.publish(1000, 10000, 1, 1, 1, TradeTape.TAKER_BUY);
+        barAggregator.poll(2000 + BarAggregator.COMPLETION_LAG_MILLIS / 2);
+
+        tradeTape.publish(1999, 10200, 1, 2, 2, TradeTape.TAKER_BUY);
+        barAggregator.poll(2000 + BarAggregator.COMPLETION_LAG_MILLIS);
+
+        assertEquals(1, oneSecondBars.lastSequence());
+        assertEquals(2, oneSecondBars.readBar(1).getTradeCount());
+        assertEquals(10200, oneSecondBars.readBar(1).getClose());
+        assertEquals(0, oneSecondBars.lateTradeCount());
+    }
+
+    @Test
+    public void testSkipsAheadAfterTapeWraps() {
+        /**
+         * The tape retains 4 trades. 10 arrive between polls, so only the last 4 can be aggregated.
+         */
+
+        for (int i = 1; i <= 10; i++) {
+            tradeTape.publish(1000 + i, 10000 + i, 1, i, i, TradeTape.TAKER_BUY);
+        }
+        assertEquals(7, tradeTape.oldestSequence());
+
+        barAggregator.poll(5000);
+
+        Bar bar = oneSecondBars.readBar(1);
+        assertEquals(4, bar.getTradeCount());
+        assertEquals(10007, bar.getOpen());
+        assertEquals(10010, bar.getClose());
+
+        // Carries on from the tape after skipping
+        tradeTape.publish(5500, 10011, 1, 11, 11, TradeTape.TAKER_BUY);
+        barAggregator.poll(7000);
+        assertEquals(2, oneSecondBars.lastSequence());
+        assertEquals(5000, oneSecondBars.readBar(2).getStartTime());
+        assertEquals(1, oneSecondBars.readBar(2).getTradeCount());
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.grpc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.OptionalLong;
+
+import static com.example.grpc.TestOrders.assertOrderShort;
+import static com.example.grpc.TestOrders.makeLimitSubmitOrderRequest;
+import static com.example.grpc.TestOrders.makeMarketSubmitOrderRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class BatchAuctionOrderBookTest {
+    BatchAuctionOrderBook orderBook;
+
+    @Before
+    public void setup() {
+        orderBook = new BatchAuctionOrderBook(Ticker.BTC_USD);
+    }
+
+    @Test
+    public void testOrdersWaitForAuction() {
+        /**
+         * #1: Customer 6001 BUY 10 BTC_USD @ 10000
+         * #2: Customer 6002 SELL 10 BTC_USD @ 10000
+         */
+
+        Order order1 = orderBook.submitOrder(1, makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD,
+                OrderDirection.BUY, 10000, 10));
+        Order order2 = orderBook.submitOrder(2, makeLimitSubmitOrderRequest(6002, Ticker.BTC_USD,
+                OrderDirection.SELL, 10000, 10));
+
+        assertOrderShort(order1, OrderStatus.PENDING, 0, 0);
+        assertOrderShort(order2, OrderStatus.PENDING, 0, 0);
+
+        assertEquals(OptionalLong.of(10000), orderBook.runAuction());
+
+        assertOrderShort(orderBook.retrieveOrder(1), OrderStatus.FILLED, 10000, 10);
+        assertOrderShort(orderBook.retrieveOrder(2), OrderStatus.FILLED, 10000, 10);
+    }
+
+    @Test
+    public void testUniformClearingPrice() {
+        /**
+         * #1: Customer 6001 BUY 10 BTC_USD @ 10200
+         * #2: Customer 6002 BUY 5 BTC_USD @ 10100
+         * #3: Customer 6003 BUY 10 BTC_USD @ 9800
+         * #4: Customer 6004 SELL 15 BTC_USD @ 9900
+         * #5: Customer 6005 SELL 10 BTC_USD @ 10300
+         *
+         * 15 crosses. Any price from 9900 to 10100 clears it, so everything fills at the midpoint 10000.
+         */
+
+        orderBook.submitOrder(1, makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD, OrderDirection.BUY, 10200, 10));
+        orderBook.submitOrder(2, makeLimitSubmitOrderRequest(6002, Ticker.BTC_USD, OrderDirection.BUY, 10100, 5));
+        orderBook.submitOrder(3, makeLimitSubmitOrderRequest(6003, Ticker.BTC_USD, OrderDirection.BUY, 9800, 10));
+        orderBook.submitOrder(4, makeLimitSubmitOrderRequest(6004, Ticker.BTC_USD, OrderDirection.SELL, 9900, 15));
+        orderBook.submitOrder(5, makeLimitSubmitOrderRequest(6005, Ticker.BTC_USD, OrderDirection.SELL, 10300, 10));
+
+        assertEquals(OptionalLong.of(10000), orderBook.runAuction());
+
+        assertOrderShort(orderBook.retrieveOrder(1), OrderStatus.FILLED, 10000, 10);
+        assertOrderShort(orderBook.retrieveOrder(2), OrderStatus.FILLED, 10000, 5);
+        assertOrderShort(orderBook.retrieveOrder(3), OrderStatus.PENDING, 0, 0);
+        assertOrderShort(orderBook.retrieveOrder(4), OrderStatus.FILLED, 10000, 15);
+        assertOrderShort(orderBook.retrieveOrder(5), OrderStatus.PENDING, 0, 0);
+
+        assertEquals(9800, orderBook.getQuote().getBid());
+        assertEquals(10300, orderBook.getQuote().getAsk());
+    }
+
+    @Test
+    public void testRationedClearingPrice() {
+        /**
+         * #1: Customer 6001 BUY 10 BTC_USD @ 10200
+         * #2: Customer 6002 BUY 10 BTC_USD @ 10100
+         * #3: Customer 6003 SELL 15 BTC_USD @ 9900
+         *
+         * Demand exceeds supply below 10100, so the price rises to 10100 and #2 is only partially filled.
+         */
+
+        orderBook.submitOrder(1, makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD, OrderDirection.BUY, 10200, 10));
+        orderBook.submitOrder(2, makeLimitSubmitOrderRequest(6002, Ticker.BTC_USD, OrderDirection.BUY, 10100, 10));
+        orderBook.submitOrder(3, makeLimitSubmitOrderRequest(6003, Ticker.BTC_USD, OrderDirection.SELL, 9900, 15));
+
+        assertEquals(OptionalLong.of(10100), orderBook.runAuction());
+
+        assertOrderShort(orderBook.retrieveOrder(1), OrderStatus.FILLED, 10100, 10);
+        assertOrderShort(orderBook.retrieveOrder(2), OrderStatus.PARTIALLY_FILLED, 10100, 5);
+        assertOrderShort(orderBook.retrieveOrder(3), OrderStatus.FILLED, 10100, 15);
+    }
+
+    @Test
+    public void testMarketOrderRemainderCancelled() {
+        /**
+         * #1: Customer 6001 SELL 5 BTC_USD @ 10000
+         * #2: Customer 6002 BUY 10 BTC_USD @ MARKET
+         */
+
+        orderBook.submitOrder(1, makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD, OrderDirection.SELL, 10000, 5));
+        orderBook.submitOrder(2, makeMarketSubmitOrderRequest(6002, Ticker.BTC_USD, OrderDirection.BUY, 10));
+
+        assertEquals(OptionalLong.of(10000), orderBook.runAuction());
+
+        assertOrderShort(orderBook.retrieveOrder(1), OrderStatus.FILLED, 10000, 5);
+        assertOrderShort(orderBook.retrieveOrder(2), OrderStatus.PARTIALLY_FILLED_AND_CANCELLED, 10000, 5);
+    }
+
+    @Test
+    public void testNoCross() {
+        orderBook.submitOrder(1, makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD, OrderDirection.BUY, 9900, 10));
+        orderBook.submitOrder(2, makeLimitSubmitOrderRequest(6002, Ticker.BTC_USD, OrderDirection.SELL, 10000, 10));
+
+        assertFalse(orderBook.runAuction().isPresent());
+
+        assertOrderShort(orderBook.retrieveOrder(1), OrderStatus.PENDING, 0, 0);
+        assertOrderShort(orderBook.retrieveOrder(2), OrderStatus.PENDING, 0, 0);
+    }
+}
@@ -0,0 +1,384 @@
+package com.example.grpc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryOrderEntryServerTest {
+    OrderManager orderManager;
+    BinaryOrderEntryServer server;
+    BinaryOrderEntryClient client;
+    Thread eventLoopThread;
+
+    @Before
+    public void setup() throws IOException {
+        start(new OrderManager());
+    }
+
+    @After
+    public void teardown() throws IOException, InterruptedException {
+        client.close();
+        server.stop();
+        orderManager.shutdown();
+    }
+
+    @Test
+    public void testSubmitRetrieveCancel() throws IOException {
+        BinaryProtocol.SubmitOrderAck submitOrderAck = client.submitOrder(6001, Ticker.BTC_USD, OrderDirection.BUY,
+                OrderType.LIMIT, 10000, 10);
+        long orderId = submitOrderAck.orderId();
+        assertEquals(0, submitOrderAck.matchedVolume());
+
+        BinaryProtocol.OrderState orderState = client.retrieveOrder(orderId);
+        assertTrue(orderState.orderWasFound());
+        assertEquals(orderId, orderState.orderId());
+        assertEquals(6001, orderState.customerId());
+        assertEquals(Ticker.BTC_USD.getNumber(), orderState.ticker());
+        assertEquals(OrderDirection.BUY.getNumber(), orderState.orderDirection());
+        assertEquals(OrderType.LIMIT.getNumber(), orderState.orderType());
+        assertEquals(OrderStatus.PENDING.getNumber(), orderState.orderStatus());
+        assertEquals(10000, orderState.limitPrice());
+        assertEquals(10, orderState.volume());
+
+        BinaryProtocol.CancelOrderAck cancelOrderAck = client.cancelOrder(orderId);
+        assertTrue(cancelOrderAck.orderWasFound());
+        assertEquals(OrderStatus.CANCELLED.getNumber(), cancelOrderAck.finalOrderStatus());
+
+        assertEquals(OrderStatus.CANCELLED.getNumber(), client.retrieveOrder(orderId).orderStatus());
+        assertFalse(client.retrieveOrder(orderId + 100).orderWasFound());
+        assertFalse(client.cancelOrder(orderId + 100).orderWasFound());
+    }
+
+    @Test
+    public void testSubmitMatches() throws IOException {
+        /**
+         * #1: Customer 6001 SELL 10 BTC_USD @ 10000
+         * #2: Customer 6002 BUY 4 BTC_USD @ MARKET
+         */
+
+        long orderId1 = client.submitOrder(6001, Ticker.BTC_USD, OrderDirection.SELL, OrderType.LIMIT,
+                10000, 10).orderId();
+
+        BinaryProtocol.SubmitOrderAck submitOrderAck = client.submitOrder(6002, Ticker.BTC_USD, OrderDirection.BUY,
+                OrderType.MARKET, 0, 4);
+        assertEquals(10000, submitOrderAck.meanMatchedPrice());
+        assertEquals(4, submitOrderAck.matchedVolume());
+
+        BinaryProtocol.OrderState orderState = client.retrieveOrder(orderId1);
+        assertEquals(OrderStatus.PARTIALLY_FILLED.getNumber(), orderState.orderStatus());
+        assertEquals(4, orderState.matchedVolume());
+    }
+
+    @Test
+    public void testGetQuote() throws IOException {
+        client.submitOrder(6001, Ticker.EUR_USD, OrderDirection.BUY, OrderType.LIMIT, 9990, 10);
+        client.submitOrder(6002, Ticker.EUR_USD, OrderDirection.SELL, OrderType.LIMIT, 10010, 10);
+
+        BinaryProtocol.QuoteResponse quoteResponse = client.getQuote(Ticker.EUR_USD);
+        assertEquals(9990, quoteResponse.bid());
+        assertEquals(10010, quoteResponse.ask());
+
+        quoteResponse = client.getQuote(Ticker.AAPL);
+        assertEquals(0, quoteResponse.bid());
+        assertEquals(0, quoteResponse.ask());
+    }
+
+    @Test
+    public void testUnknownTemplateRejected() throws IOException {
+        try (SocketChannel socketChannel = connect()) {
+            ByteBuffer request = BinaryProtocol.allocateBuffer(64);
+            encodeRequest(request, 77, 8, BinaryProtocol.SCHEMA_ID, BinaryProtocol.SCHEMA_VERSION);
+            request.flip();
+            write(socketChannel, request);
+
+            assertReject(readResponse(socketChannel), 77, BinaryProtocol.Reject.UNKNOWN_TEMPLATE);
+        }
+    }
+
+    @Test
+    public void testUnsupportedSchemaRejected() throws IOException {
+        try (SocketChannel socketChannel = connect()) {
+            ByteBuffer request = BinaryProtocol.allocateBuffer(64);
+            encodeGetQuote(request, BinaryProtocol.SCHEMA_ID + 1, BinaryProtocol.SCHEMA_VERSION);
+            encodeGetQuote(request, BinaryProtocol.SCHEMA_ID, BinaryProtocol.SCHEMA_VERSION + 1);
+            encodeGetQuote(request, BinaryProtocol.SCHEMA_ID, 0);
+            request.flip();
+            write(socketChannel, request);
+
+            assertReject(readResponse(socketChannel), BinaryProtocol.GetQuote.TEMPLATE_ID,
+                    BinaryProtocol.Reject.UNSUPPORTED_SCHEMA);
+            assertReject(readResponse(socketChannel), BinaryProtocol.GetQuote.TEMPLATE_ID,
+                    BinaryProtocol.Reject.UNSUPPORTED_VERSION);
+            assertReject(readResponse(socketChannel), BinaryProtocol.GetQuote.TEMPLATE_ID,
+                    BinaryProtocol.Reject.UNSUPPORTED_VERSION);
+        }
+    }
+
+    @Test
+    public void testRequestSplitAcrossWrites() throws IOException, InterruptedException {
+        client.submitOrder(6001, Ticker.BTC_USD, OrderDirection.BUY, OrderType.LIMIT, 9990, 10);
+
+        try (SocketChannel socketChannel = connect()) {
+            ByteBuffer request = BinaryProtocol.allocateBuffer(64);
+            encodeGetQuote(request, BinaryProtocol.SCHEMA_ID, BinaryProtocol.SCHEMA_VERSION);
+            request.flip();
+            int requestLength = request.limit();
+
+            // Part way through the header, then the rest once the server has had a chance to read the first part
+            request.limit(5);
+            write(socketChannel, request);
+            Thread.sleep(50);
+            request.limit(requestLength);
+            write(socketChannel, request);
+
+            ByteBuffer response = readResponse(socketChannel);
+            assertEquals(BinaryProtocol.QuoteResponse.TEMPLATE_ID, templateId(response));
+            BinaryProtocol.QuoteResponse quoteResponse = new BinaryProtocol.QuoteResponse();
+            quoteResponse.wrap(response, BinaryProtocol.MessageHeader.ENCODED_LENGTH);
+            assertEquals(9990, quoteResponse.bid());
+        }
+    }
+
+    @Test
+    public void testSeveralRequestsInOneWrite() throws IOException {
+        long orderId = client.submitOrder(6001, Ticker.BTC_USD, OrderDirection.SELL, OrderType.LIMIT,
+                10010, 10).orderId();
+
+        try (SocketChannel socketChannel = connect()) {
+            ByteBuffer request = BinaryProtocol.allocateBuffer(256);
+            BinaryProtocol.OrderReference orderReference = new BinaryProtocol.OrderReference();
+
+            orderReference.wrap(request, encodeRequest(request, BinaryProtocol.OrderReference.RETRIEVE_TEMPLATE_ID,
+                    BinaryProtocol.OrderReference.BLOCK_LENGTH, BinaryProtocol.SCHEMA_ID,
+                    BinaryProtocol.SCHEMA_VERSION));
+            orderReference.orderId(orderId);
+            encodeGetQuote(request, BinaryProtocol.SCHEMA_ID, BinaryProtocol.SCHEMA_VERSION);
+            orderReference.wrap(request, encodeRequest(request, BinaryProtocol.OrderReference.CANCEL_TEMPLATE_ID,
+                    BinaryProtocol.OrderReference.BLOCK_LENGTH, BinaryProtocol.SCHEMA_ID,
+                    BinaryProtocol.SCHEMA_VERSION));
+            orderReference.orderId(orderId);
+            request.flip();
+            write(socketChannel, request);
+
+            ByteBuffer response = readResponse(socketChannel);
+            assertEquals(BinaryProtocol.OrderState.TEMPLATE_ID, templateId(response));
+            BinaryProtocol.OrderState orderState = new BinaryProtocol.OrderState();
+            orderState.wrap(response, BinaryProtocol.MessageHeader.ENCODED_LENGTH);
+            assertEquals(orderId, orderState.orderId());
+
+            response = readResponse(socketChannel);
+            assertEquals(BinaryProtocol.QuoteResponse.TEMPLATE_ID, templateId(response));
+            BinaryProtocol.QuoteResponse quoteResponse = new BinaryProtocol.QuoteResponse();
+            quoteResponse.wrap(response, BinaryProtocol.MessageHeader.ENCODED_LENGTH);
+            assertEquals(10010, quoteResponse.ask());
+
+            response = readResponse(socketChannel);
+            assertEquals(BinaryProtocol.CancelOrderAck.TEMPLATE_ID, templateId(response));
+            BinaryProtocol.CancelOrderAck cancelOrderAck = new BinaryProtocol.CancelOrderAck();
+            cancelOrderAck.wrap(response, BinaryProtocol.MessageHeader.ENCODED_LENGTH);
+            assertTrue(cancelOrderAck.orderWasFound());
+        }
+    }
+
+    @Test
+    public void testFailedRequestRejected() throws IOException, InterruptedException {
+        /**
+         * A request which throws is rejected, and the connection and event loop carry on.
+         */
+
+        teardown();
+        start(new OrderManager() {
+            @Override
+            public Optional<OrderStatus> cancelOrder(long orderId) {
+                throw new IllegalStateException("Cancel failed");
+            }
+        });
+
+        try (SocketChannel socketChannel = connect()) {
+            ByteBuffer request = BinaryProtocol.allocateBuffer(64);
+            BinaryProtocol.OrderReference orderReference = new BinaryProtocol.OrderReference();
+            orderReference.wrap(request, encodeRequest(request, BinaryProtocol.OrderReference.CANCEL_TEMPLATE_ID,
+                    BinaryProtocol.OrderReference.BLOCK_LENGTH, BinaryProtocol.SCHEMA_ID,
+                    BinaryProtocol.SCHEMA_VERSION));
+            orderReference.orderId(1);
+            encodeGetQuote(request, BinaryProtocol.SCHEMA_ID, BinaryProtocol.SCHEMA_VERSION);
+            request.flip();
+            write(socketChannel, request);
+
+            assertReject(readResponse(socketChannel), BinaryProtocol.OrderReference.CANCEL_TEMPLATE_ID,
+                    BinaryProtocol.Reject.INTERNAL_ERROR);
+            assertEquals(BinaryProtocol.QuoteResponse.TEMPLATE_ID, templateId(readResponse(socketChannel)));
+        }
+
+        assertEquals(0, client.getQuote(Ticker.BTC_USD).bid());
+    }
+
+    @Test
+    public void testPipelinedClientWhichDoesNotRead() throws IOException, InterruptedException {
+        /**
+         * A client keeps sending quote requests without reading any responses, until nothing more can be sent. Once
+         * both the server's buffers are full it stops reading that connection instead of spinning, other connections
+         * are still served, and every request is answered once the client reads again.
+         */
+
+        int requestLength = BinaryProtocol.MessageHeader.ENCODED_LENGTH + BinaryProtocol.GetQuote.BLOCK_LENGTH;
+        int responseLength = BinaryProtocol.MessageHeader.ENCODED_LENGTH + BinaryProtocol.QuoteResponse.BLOCK_LENGTH;
+
+        try (SocketChannel socketChannel = SocketChannel.open()) {
+            socketChannel.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+            socketChannel.connect(new InetSocketAddress("localhost", server.port()));
+            socketChannel.configureBlocking(false);
+
+            ByteBuffer requests = BinaryProtocol.allocateBuffer(64 * 1024);
+            while (requests.hasRemaining()) {
+                encodeGetQuote(requests, BinaryProtocol.SCHEMA_ID, BinaryProtocol.SCHEMA_VERSION);
+            }
+            requests.flip();
+
+            long bytesSent = 0;
+            long lastProgress = System.currentTimeMillis();
+            while (System.currentTimeMillis() - lastProgress < 200) {
+                int written = socketChannel.write(requests);
+                if (written > 0) {
+                    bytesSent += written;
+                    lastProgress = System.currentTimeMillis();
+                }
+                if (!requests.hasRemaining()) {
+                    requests.rewind();
+                }
+            }
+            assertTrue(bytesSent > 64 * 1024);
+
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            long cpuNanosBefore = threadMXBean.getThreadCpuTime(eventLoopThread.getId());
+            Thread.sleep(250);
+            long cpuNanos = threadMXBean.getThreadCpuTime(eventLoopThread.getId()) - cpuNanosBefore;
+            assertTrue("Event loop used " + cpuNanos / 1_000_000 + "ms of CPU while stalled",
+                    cpuNanos < 50_000_000L);
+
+            assertEquals(0, client.getQuote(Ticker.BTC_USD).bid());
+
+            socketChannel.configureBlocking(true);
+            long expectedResponses = bytesSent / requestLength;
+            ByteBuffer responses = BinaryProtocol.allocateBuffer(64 * 1024);
+            long bytesReceived = 0;
+            while (bytesReceived < expectedResponses * responseLength) {
+                responses.clear();
+                int read = socketChannel.read(responses);
+                if (read < 0) {
+                    throw new IOException("Server disconnected");
+                }
+                bytesReceived += read;
+            }
+            assertEquals(expectedResponses * responseLength, bytesReceived);
+        }
+    }
+
+    @Test
+    public void testStopClosesConnections() throws IOException {
+        try (SocketChannel socketChannel = connect()) {
+            ByteBuffer request = BinaryProtocol.allocateBuffer(64);
+            encodeGetQuote(request, BinaryProtocol.SCHEMA_ID, BinaryProtocol.SCHEMA_VERSION);
+            request.flip();
+            write(socketChannel, request);
+            assertEquals(BinaryProtocol.QuoteResponse.TEMPLATE_ID, templateId(readResponse(socketChannel)));
+
+            server.stop();
+
+            assertEquals(-1, socketChannel.read(BinaryProtocol.allocateBuffer(64)));
+        }
+    }
+
+    ///
+    // Utility Functions
+    ///
+
+    private void start(OrderManager orderManager) throws IOException {
+        this.orderManager = orderManager;
+        server = new BinaryOrderEntryServer(orderManager, 0);
+        eventLoopThread = server.start();
+        client = new BinaryOrderEntryClient("localhost", server.port());
+    }
+
+    private SocketChannel connect() throws IOException {
+        return SocketChannel.open(new InetSocketAddress("localhost", server.port()));
+    }
+
+    /***
+     * Append a request header with the given schema and version, and zero its body.
+     * @return Offset of the request body.
+     */
+    private static int encodeRequest(ByteBuffer request, int templateId, int blockLength, int schemaId, int version) {
+        int headerOffset = request.position();
+        request.putShort(headerOffset, (short) blockLength);
+        request.putShort(headerOffset + 2, (short) templateId);
+        request.putShort(headerOffset + 4, (short) schemaId);
+        request.putShort(headerOffset + 6, (short) version);
+
+        int bodyOffset = headerOffset + BinaryProtocol.MessageHeader.ENCODED_LENGTH;
+        for (int i = 0; i < blockLength; i += 8) {
+            request.putLong(bodyOffset + i, 0);
+        }
+        request.position(bodyOffset + blockLength);
+        return bodyOffset;
+    }
+
+    private static void encodeGetQuote(ByteBuffer request, int schemaId, int version) {
+        BinaryProtocol.GetQuote getQuote = new BinaryProtocol.GetQuote();
+        getQuote.wrap(request, encodeRequest(request, BinaryProtocol.GetQuote.TEMPLATE_ID,
+                BinaryProtocol.GetQuote.BLOCK_LENGTH, schemaId, version));
+        getQuote.ticker(Ticker.BTC_USD);
+    }
+
+    private static void write(SocketChannel socketChannel, ByteBuffer request) throws IOException {
+        while (request.hasRemaining()) {
+            socketChannel.write(request);
+        }
+    }
+
+    /***
+     * Read exactly one response.
+     * @return Buffer holding the response from offset zero.
+     */
+    private static ByteBuffer readResponse(SocketChannel socketChannel) throws IOException {
+        ByteBuffer response = BinaryProtocol.allocateBuffer(BinaryProtocol.MAX_MESSAGE_LENGTH);
+        readFully(socketChannel, response, BinaryProtocol.MessageHeader.ENCODED_LENGTH);
+        readFully(socketChannel, response, response.getShort(0) & 0xFFFF);
+        return response;
+    }
+
+    private static void readFully(SocketChannel socketChannel, ByteBuffer response, int length) throws IOException {
+        response.limit(response.position() + length);
+        while (response.hasRemaining()) {
+            if (socketChannel.read(response) < 0) {
+                throw new IOException("Server disconnected");
+            }
+        }
+    }
+
+    private static int templateId(ByteBuffer response) {
+        return response.getShort(2) & 0xFFFF;
+    }
+
+    private static void assertReject(ByteBuffer response, int rejectedTemplateId, int reason) {
+        assertEquals(BinaryProtocol.Reject.TEMPLATE_ID, templateId(response));
+
+        BinaryProtocol.Reject reject = new BinaryProtocol.Reject();
+        reject.wrap(response, BinaryProtocol.MessageHeader.ENCODED_LENGTH);
+        assertEquals(rejectedTemplateId, reject.rejectedTemplateId());
+        assertEquals(reason, reject.reason());
+    }
+}
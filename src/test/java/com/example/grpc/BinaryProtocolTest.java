@@ -0,0 +1,153 @@
+package com.example.grpc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryProtocolTest {
+    /**
+     * Messages are written away from the start of the buffer to check flyweights honour their offset.
+     */
+    private static final int OFFSET = 24;
+
+    ByteBuffer buffer;
+
+    @Before
+    public void setup() {
+        buffer = BinaryProtocol.allocateBuffer(256);
+    }
+
+    @Test
+    public void testMessageHeader() {
+        BinaryProtocol.MessageHeader header = new BinaryProtocol.MessageHeader();
+        header.wrap(buffer, OFFSET);
+        header.encode(BinaryProtocol.SubmitOrder.TEMPLATE_ID, BinaryProtocol.SubmitOrder.BLOCK_LENGTH);
+
+        assertEquals(BinaryProtocol.SubmitOrder.BLOCK_LENGTH, buffer.getShort(OFFSET));
+        assertEquals(BinaryProtocol.SubmitOrder.TEMPLATE_ID, buffer.getShort(OFFSET + 2));
+        assertEquals(BinaryProtocol.SCHEMA_ID, buffer.getShort(OFFSET + 4));
+        assertEquals(BinaryProtocol.SCHEMA_VERSION, buffer.getShort(OFFSET + 6));
+
+        // Unsigned
+        buffer.putShort(OFFSET + 2, (short) 0xFFFE);
+        assertEquals(0xFFFE, header.templateId());
+        assertEquals(BinaryProtocol.SubmitOrder.BLOCK_LENGTH, header.blockLength());
+        assertEquals(BinaryProtocol.SCHEMA_ID, header.schemaId());
+        assertEquals(BinaryProtocol.SCHEMA_VERSION, header.version());
+    }
+
+    @Test
+    public void testLittleEndian() {
+        BinaryProtocol.OrderReference orderReference = new BinaryProtocol.OrderReference();
+        orderReference.wrap(buffer, OFFSET);
+        orderReference.orderId(0x0102030405060708L);
+
+        assertEquals(0x08, buffer.get(OFFSET));
+        assertEquals(0x01, buffer.get(OFFSET + 7));
+    }
+
+    @Test
+    public void testSubmitOrder() {
+        BinaryProtocol.SubmitOrder submitOrder = new BinaryProtocol.SubmitOrder();
+        submitOrder.wrap(buffer, OFFSET);
+        submitOrder
+                .customerId(6001)
+                .ticker(Ticker.EUR_USD)
+                .orderDirection(OrderDirection.SELL)
+                .orderType(OrderType.LIMIT)
+                .limitPrice(10000)
+                .volume(70);
+
+        assertEquals(6001, buffer.getLong(OFFSET));
+        assertEquals(Ticker.EUR_USD.getNumber(), buffer.get(OFFSET + 8));
+        assertEquals(OrderDirection.SELL.getNumber(), buffer.get(OFFSET + 9));
+        assertEquals(OrderType.LIMIT.getNumber(), buffer.get(OFFSET + 10));
+        assertEquals(10000, buffer.getLong(OFFSET + 16));
+        assertEquals(70, buffer.getLong(OFFSET + 24));
+
+        BinaryProtocol.SubmitOrder decoded = new BinaryProtocol.SubmitOrder();
+        decoded.wrap(buffer, OFFSET);
+        assertEquals(6001, decoded.customerId());
+        assertEquals(Ticker.EUR_USD.getNumber(), decoded.ticker());
+        assertEquals(OrderDirection.SELL.getNumber(), decoded.orderDirection());
+        assertEquals(OrderType.LIMIT.getNumber(), decoded.orderType());
+        assertEquals(10000, decoded.limitPrice());
+        assertEquals(70, decoded.volume());
+    }
+
+    @Test
+    public void testOrderState() {
+        BinaryProtocol.OrderState orderState = new BinaryProtocol.OrderState();
+        orderState.wrap(buffer, OFFSET);
+        orderState
+                .orderWasFound(true)
+                .ticker(Ticker.BTC_USD)
+                .orderDirection(OrderDirection.BUY)
+                .orderType(OrderType.MARKET)
+                .orderStatus(OrderStatus.PARTIALLY_FILLED)
+                .orderId(12345)
+                .customerId(6001)
+                .limitPrice(0)
+                .volume(10)
+                .meanMatchedPrice(9990)
+                .matchedVolume(4);
+
+        assertEquals(1, buffer.get(OFFSET));
+        assertEquals(Ticker.BTC_USD.getNumber(), buffer.get(OFFSET + 1));
+        assertEquals(OrderDirection.BUY.getNumber(), buffer.get(OFFSET + 2));
+        assertEquals(OrderType.MARKET.getNumber(), buffer.get(OFFSET + 3));
+        assertEquals(OrderStatus.PARTIALLY_FILLED.getNumber(), buffer.get(OFFSET + 4));
+        assertEquals(12345, buffer.getLong(OFFSET + 8));
+        assertEquals(6001, buffer.getLong(OFFSET + 16));
+        assertEquals(0, buffer.getLong(OFFSET + 24));
+        assertEquals(10, buffer.getLong(OFFSET + 32));
+        assertEquals(9990, buffer.getLong(OFFSET + 40));
+        assertEquals(4, buffer.getLong(OFFSET + 48));
+
+        BinaryProtocol.OrderState decoded = new BinaryProtocol.OrderState();
+        decoded.wrap(buffer, OFFSET);
+        assertTrue(decoded.orderWasFound());
+        assertEquals(OrderStatus.PARTIALLY_FILLED.getNumber(), decoded.orderStatus());
+        assertEquals(12345, decoded.orderId());
+        assertEquals(10, decoded.volume());
+        assertEquals(9990, decoded.meanMatchedPrice());
+        assertEquals(4, decoded.matchedVolume());
+    }
+
+    @Test
+    public void testResponses() {
+        BinaryProtocol.SubmitOrderAck submitOrderAck = new BinaryProtocol.SubmitOrderAck();
+        submitOrderAck.wrap(buffer, OFFSET);
+        submitOrderAck.orderId(7).meanMatchedPrice(10005).matchedVolume(3);
+        assertEquals(7, buffer.getLong(OFFSET));
+        assertEquals(10005, buffer.getLong(OFFSET + 8));
+        assertEquals(3, buffer.getLong(OFFSET + 16));
+
+        BinaryProtocol.CancelOrderAck cancelOrderAck = new BinaryProtocol.CancelOrderAck();
+        cancelOrderAck.wrap(buffer, OFFSET);
+        cancelOrderAck.orderWasFound(false);
+        assertFalse(cancelOrderAck.orderWasFound());
+        cancelOrderAck.orderWasFound(true).finalOrderStatus(OrderStatus.CANCELLED);
+        assertEquals(1, buffer.get(OFFSET));
+        assertEquals(OrderStatus.CANCELLED.getNumber(), buffer.get(OFFSET + 1));
+
+        BinaryProtocol.QuoteResponse quoteResponse = new BinaryProtocol.QuoteResponse();
+        quoteResponse.wrap(buffer, OFFSET);
+        quoteResponse.bid(9990).ask(10010);
+        assertEquals(9990, buffer.getLong(OFFSET));
+        assertEquals(10010, buffer.getLong(OFFSET + 8));
+
+        BinaryProtocol.Reject reject = new BinaryProtocol.Reject();
+        reject.wrap(buffer, OFFSET);
+        reject.rejectedTemplateId(BinaryProtocol.GetQuote.TEMPLATE_ID).reason(BinaryProtocol.Reject.INVALID_FIELD);
+        assertEquals(BinaryProtocol.GetQuote.TEMPLATE_ID, buffer.getShort(OFFSET));
+        assertEquals(BinaryProtocol.Reject.INVALID_FIELD, buffer.getShort(OFFSET + 2));
+        assertEquals(BinaryProtocol.GetQuote.TEMPLATE_ID, reject.rejectedTemplateId());
+        assertEquals(BinaryProtocol.Reject.INVALID_FIELD, reject.reason());
+    }
+}
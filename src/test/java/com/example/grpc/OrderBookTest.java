@@ -3,7 +3,12 @@ package com.example.grpc;
 import org.junit.Before;
 import org.junit.Test;
 
+import static com.example.grpc.TestOrders.assertOrderShort;
+import static com.example.grpc.TestOrders.makeLimitSubmitOrderRequest;
+import static com.example.grpc.TestOrders.makeMarketSubmitOrderRequest;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class OrderBookTest {
     OrderBook orderBook;
@@ -66,39 +71,101 @@ public class OrderBookTest {
         assertOrderShort(order2, OrderStatus.FILLED, 10000, 10);
     }
 
-    ///
-    // Utility Functions
-    ///
+    @Test
+    public void testGetDepth() {
+        /**
+         * #1: Customer 6001 SELL 10 BTC_USD @ 10100
+         * #2: Customer 6002 SELL 5 BTC_USD @ 10100
+         * #3: Customer 6003 SELL 10 BTC_USD @ 10200
+         * #4: Customer 6004 BUY 10 BTC_USD @ 10000
+         * #5: Customer 6005 BUY 4 BTC_USD @ 10100
+         */
+
+        orderBook.submitOrder(1, makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD,
+                OrderDirection.SELL, 10100, 10));
+        orderBook.submitOrder(2, makeLimitSubmitOrderRequest(6002, Ticker.BTC_USD,
+                OrderDirection.SELL, 10100, 5));
+        orderBook.submitOrder(3, makeLimitSubmitOrderRequest(6003, Ticker.BTC_USD,
+                OrderDirection.SELL, 10200, 10));
+        orderBook.submitOrder(4, makeLimitSubmitOrderRequest(6004, Ticker.BTC_USD,
+                OrderDirection.BUY, 10000, 10));
+        orderBook.submitOrder(5, makeLimitSubmitOrderRequest(6005, Ticker.BTC_USD,
+                OrderDirection.BUY, 10100, 4));
 
-    private static SubmitOrderRequest makeLimitSubmitOrderRequest(long customerId, Ticker ticker,
-                                                                  OrderDirection orderDirection, long limitPrice,
-                                                                  long volume)
-    {
-        return SubmitOrderRequest.newBuilder()
-                .setCustomerId(customerId)
-                .setTicker(ticker)
-                .setOrderDirection(orderDirection)
-                .setOrderType(OrderType.LIMIT)
-                .setLimitPrice(limitPrice)
-                .setVolume(volume)
-                .build();
+        Depth depth = orderBook.getDepth(0);
+
+        assertEquals(1, depth.getBidsCount());
+        assertDepthLevel(depth.getBids(0), 10000, 10, 1);
+        assertEquals(2, depth.getAsksCount());
+        assertDepthLevel(depth.getAsks(0), 10100, 11, 2);
+        assertDepthLevel(depth.getAsks(1), 10200, 10, 1);
+
+        orderBook.cancelOrder(1);
+        depth = orderBook.getDepth(1);
+
+        assertEquals(1, depth.getAsksCount());
+        assertDepthLevel(depth.getAsks(0), 10100, 5, 1);
     }
 
-    private static SubmitOrderRequest makeMarketSubmitOrderRequest(long customerId, Ticker ticker,
-                                                                   OrderDirection orderDirection, long volume)
-    {
-        return SubmitOrderRequest.newBuilder()
-                .setCustomerId(customerId)
-                .setTicker(ticker)
-                .setOrderDirection(orderDirection)
-                .setOrderType(OrderType.MARKET)
-                .setVolume(volume)
-                .build();
+    @Test
+    public void testEstimateFill() {
+        /**
+         * #1: Customer 6001 SELL 10 BTC_USD @ 10000
+         * #2: Customer 6002 SELL 10 BTC_USD @ 10200
+         */
+
+        orderBook.submitOrder(1, makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD,
+                OrderDirection.SELL, 10000, 10));
+        orderBook.submitOrder(2, makeLimitSubmitOrderRequest(6002, Ticker.BTC_USD,
+                OrderDirection.SELL, 10200, 10));
+
+        FillEstimate fillEstimate = orderBook.estimateFill(OrderDirection.BUY, 15);
+
+        assertEquals(15, fillEstimate.getFillableVolume());
+        assertEquals(10066, fillEstimate.getVwap());
+        assertEquals(10200, fillEstimate.getWorstPrice());
+        assertTrue(fillEstimate.getFullyFillable());
+
+        fillEstimate = orderBook.estimateFill(OrderDirection.BUY, 25);
+
+        assertEquals(20, fillEstimate.getFillableVolume());
+        assertFalse(fillEstimate.getFullyFillable());
+
+        fillEstimate = orderBook.estimateFill(OrderDirection.SELL, 5);
+
+        assertEquals(0, fillEstimate.getFillableVolume());
+        assertEquals(0, fillEstimate.getVwap());
     }
 
-    private static void assertOrderShort(Order order, OrderStatus orderStatus, long meanMatchedPrice, long meanMatchedVolume) {
-        assertEquals(orderStatus, order.getOrderStatus());
-        assertEquals(meanMatchedPrice, order.getMeanMatchedPrice());
-        assertEquals(meanMatchedVolume, order.getMatchedVolume());
+    @Test
+    public void testReadFallsBackToReadLock() {
+        /**
+         * Each optimistic attempt is invalidated by a write, so the query ends up running under the read lock, where
+         * no write can get in.
+         */
+
+        int[] attempts = {0};
+        boolean wasReadLocked = orderBook.read(() -> {
+            attempts[0]++;
+            long stamp = orderBook.lock.tryWriteLock();
+            if (stamp != 0) {
+                orderBook.lock.unlockWrite(stamp);
+            }
+            return orderBook.lock.isReadLocked();
+        });
+
+        assertTrue(wasReadLocked);
+        assertEquals(OrderBook.OPTIMISTIC_READ_ATTEMPTS + 1, attempts[0]);
+        assertFalse(orderBook.lock.isReadLocked());
+    }
+
+    ///
+    // Utility Functions
+    ///
+
+    private static void assertDepthLevel(DepthLevel depthLevel, long price, long volume, int orderCount) {
+        assertEquals(price, depthLevel.getPrice());
+        assertEquals(volume, depthLevel.getVolume());
+        assertEquals(orderCount, depthLevel.getOrderCount());
     }
 }
@@ -0,0 +1,798 @@
+package com.example.grpc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/***
+ * Hammers OrderManager from many threads at once. The first test runs a random mix of operations across several
+ * tickers and then checks the engine's invariants against the final state and the trade tapes. The second records
+ * many small concurrent histories on one ticker and checks each is linearizable against a sequential model of the
+ * order book. The third checks that queries complete while writes keep coming.
+ */
+public class OrderManagerStressTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 1500;
+    private static final Ticker[] CONTINUOUS_TICKERS = {Ticker.BTC_USD, Ticker.EUR_USD, Ticker.AAPL};
+    private static final Ticker BATCH_AUCTION_TICKER = Ticker.FB;
+
+    private static final int LINEARIZABILITY_ROUNDS = 300;
+    private static final int LINEARIZABILITY_THREADS = 4;
+    private static final int LINEARIZABILITY_OPERATIONS_PER_THREAD = 5;
+
+    private static final int QUERIES_UNDER_WRITES = 20_000;
+    private static final long QUERIES_UNDER_WRITES_TIMEOUT_SECONDS = 30;
+
+    OrderManager orderManager;
+    ExecutorService executorService;
+
+    @Before
+    public void setup() {
+        executorService = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void teardown() throws InterruptedException {
+        executorService.shutdownNow();
+        if (orderManager != null) {
+            orderManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testInvariantsUnderConcurrentLoad() throws Exception {
+        orderManager = new OrderManager(Collections.singletonMap(BATCH_AUCTION_TICKER, 1L));
+
+        CyclicBarrier startBarrier = new CyclicBarrier(THREADS);
+        AtomicLong highestOrderId = new AtomicLong();
+        List<Callable<Observations>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            long seed = 1000 + thread;
+            tasks.add(() -> runRandomOperations(new Random(seed), startBarrier, highestOrderId));
+        }
+
+        Observations observations = new Observations();
+        for (Observations threadObservations: runAll(tasks)) {
+            observations.submitted.putAll(threadObservations.submitted);
+            threadObservations.cancelResults.forEach((orderId, results) ->
+                    observations.cancelResults.computeIfAbsent(orderId, k -> new ArrayList<>()).addAll(results));
+        }
+
+        // Stop the auctions so the books stay still while they are checked
+        orderManager.shutdown();
+
+        for (Ticker ticker: CONTINUOUS_TICKERS) {
+            assertOrderBookInvariants(orderManager.getOrderBook(ticker), observations, false);
+        }
+        assertOrderBookInvariants(orderManager.getOrderBook(BATCH_AUCTION_TICKER), observations, true);
+    }
+
+    @Test
+    public void testLinearizability() throws Exception {
+        Random random = new Random(42);
+
+        for (int round = 0; round < LINEARIZABILITY_ROUNDS; round++) {
+            orderManager = new OrderManager();
+            List<Operation> history = recordHistory(random.nextLong());
+            orderManager.shutdown();
+
+            assertTrue("History is not linearizable: " + history,
+                    isLinearizable(history, 0, new Model(), new HashSet<>()));
+        }
+    }
+
+    @Test
+    public void testQueriesCompleteWhileWritesKeepComing() throws Exception {
+        /**
+         * Every other thread submits and cancels orders on one ticker for as long as the queries run, so optimistic
+         * reads keep getting invalidated. The queries must still finish and see a consistent book.
+         */
+
+        orderManager = new OrderManager();
+        Ticker ticker = CONTINUOUS_TICKERS[0];
+
+        AtomicBoolean isWriting = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int thread = 1; thread < THREADS; thread++) {
+            Random random = new Random(2000 + thread);
+            writers.add(executorService.submit(() -> {
+                while (isWriting.get()) {
+                    Order order = orderManager.submitOrder(makeRandomSubmitOrderRequest(random, ticker));
+                    if (random.nextBoolean()) {
+                        orderManager.cancelOrder(order.getOrderId());
+                    }
+                }
+            }));
+        }
+
+        Future<?> reader = executorService.submit(() -> {
+            for (int i = 0; i < QUERIES_UNDER_WRITES; i++) {
+                Quote quote = orderManager.getQuote(TickerReference.newBuilder().setTicker(ticker).build());
+                if (quote.getBid() != 0 && quote.getAsk() != 0) {
+                    assertTrue("Crossed quote " + quote, quote.getBid() < quote.getAsk());
+                }
+
+                assertDepthConsistent(orderManager.getDepth(DepthRequest.newBuilder().setTicker(ticker).build()), true);
+            }
+        });
+
+        try {
+            reader.get(QUERIES_UNDER_WRITES_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            isWriting.set(false);
+        }
+        for (Future<?> writer: writers) {
+            writer.get();
+        }
+    }
+
+    ///
+    // Invariants
+    ///
+
+    /**
+     * What one thread saw while running random operations.
+     */
+    static class Observations {
+        final Map<Long, SubmitOrderRequest> submitted = new HashMap<>();
+        final Map<Long, List<OrderStatus>> cancelResults = new HashMap<>();
+        final Map<Long, Order> lastRetrieved = new HashMap<>();
+    }
+
+    private Observations runRandomOperations(Random random, CyclicBarrier startBarrier, AtomicLong highestOrderId)
+            throws Exception {
+        Observations observations = new Observations();
+        startBarrier.await();
+
+        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+            Ticker ticker = (random.nextInt(4) == 0) ? BATCH_AUCTION_TICKER :
+                    CONTINUOUS_TICKERS[random.nextInt(CONTINUOUS_TICKERS.length)];
+            boolean isBatchAuction = ticker == BATCH_AUCTION_TICKER;
+
+            // IDs a little past the highest seen may not have been handed out yet, which must be handled too
+            long orderId = 1 + random.nextInt((int) highestOrderId.get() + THREADS);
+
+            int operation = random.nextInt(100);
+            if (operation < 40) {
+                SubmitOrderRequest submitOrderRequest = makeRandomSubmitOrderRequest(random, ticker);
+                Order order = orderManager.submitOrder(submitOrderRequest);
+
+                assertEquals(submitOrderRequest.getVolume(), order.getVolume());
+                assertTrue(order.getMatchedVolume() <= order.getVolume());
+                observations.submitted.put(order.getOrderId(), submitOrderRequest);
+                highestOrderId.accumulateAndGet(order.getOrderId(), Math::max);
+            } else if (operation < 60) {
+                Optional<OrderStatus> orderStatus = orderManager.cancelOrder(orderId);
+
+                if (orderStatus.isPresent()) {
+                    assertTrue(isTerminal(orderStatus.get()));
+                    observations.cancelResults.computeIfAbsent(orderId, k -> new ArrayList<>()).add(orderStatus.get());
+                }
+            } else if (operation < 75) {
+                Optional<Order> order = orderManager.retrieveOrder(OrderReference.newBuilder()
+                        .setOrderId(orderId)
+                        .build());
+
+                if (order.isPresent()) {
+                    assertRetrievedOrderProgresses(observations.lastRetrieved.get(orderId), order.get());
+                    observations.lastRetrieved.put(orderId, order.get());
+                }
+            } else if (operation < 85) {
+                Quote quote = orderManager.getQuote(TickerReference.newBuilder().setTicker(ticker).build());
+
+                if (!isBatchAuction && quote.getBid() != 0 && quote.getAsk() != 0) {
+                    assertTrue("Crossed quote " + quote, quote.getBid() < quote.getAsk());
+                }
+            } else if (operation < 93) {
+                Depth depth = orderManager.getDepth(DepthRequest.newBuilder().setTicker(ticker).build());
+
+                assertDepthConsistent(depth, !isBatchAuction);
+            } else {
+                OrderDirection orderDirection = random.nextBoolean() ? OrderDirection.BUY : OrderDirection.SELL;
+                long volume = 1 + random.nextInt(50);
+                FillEstimate fillEstimate = orderManager.estimateFill(FillEstimateRequest.newBuilder()
+                        .setTicker(ticker)
+                        .setOrderDirection(orderDirection)
+                        .setVolume(volume)
+                        .build());
+
+                assertTrue(fillEstimate.getFillableVolume() <= volume);
+                assertEquals(fillEstimate.getFillableVolume() == volume, fillEstimate.getFullyFillable());
+                if (fillEstimate.getFillableVolume() > 0) {
+                    assertTrue(orderDirection == OrderDirection.BUY ?
+                            fillEstimate.getVwap() <= fillEstimate.getWorstPrice() :
+                            fillEstimate.getVwap() >= fillEstimate.getWorstPrice());
+                }
+            }
+        }
+
+        return observations;
+    }
+
+    /***
+     * Check the final state of an order book against what the threads saw, once nothing is running.
+     * @param orderBook Order book.
+     * @param observations Observations of all threads.
+     * @param isBatchAuction True if the book matches in batch auctions.
+     */
+    private static void assertOrderBookInvariants(OrderBook orderBook, Observations observations,
+                                                  boolean isBatchAuction) {
+        // Every submitted order is in the book as submitted, with no volume gained or lost
+        int submittedCount = 0;
+        long buyFilledVolume = 0;
+        long sellFilledVolume = 0;
+        for (Map.Entry<Long, SubmitOrderRequest> entry: observations.submitted.entrySet()) {
+            SubmitOrderRequest submitOrderRequest = entry.getValue();
+            if (submitOrderRequest.getTicker() != orderBook.ticker) {
+                continue;
+            }
+            submittedCount++;
+
+            MutableOrder mutableOrder = orderBook.allOrders.get(entry.getKey());
+            assertNotNull("Lost order " + entry.getKey(), mutableOrder);
+            assertEquals(submitOrderRequest.getOrderDirection() == OrderDirection.BUY, mutableOrder.isBuyOrder);
+            assertEquals(submitOrderRequest.getLimitPrice(), mutableOrder.limitPrice);
+            assertTrue("Overfilled " + mutableOrder, mutableOrder.remainingVolume >= 0);
+            assertEquals(submitOrderRequest.getVolume(), mutableOrder.filledVolume + mutableOrder.remainingVolume);
+
+            if (mutableOrder.isBuyOrder) {
+                buyFilledVolume += mutableOrder.filledVolume;
+            } else {
+                sellFilledVolume += mutableOrder.filledVolume;
+            }
+        }
+        assertEquals(submittedCount, orderBook.allOrders.size());
+        assertEquals(buyFilledVolume, sellFilledVolume);
+
+        assertTradeTapeMatchesOrders(orderBook, isBatchAuction);
+
+        // Every active order is resting exactly once, every terminal order is in the history exactly once
+        List<MutableOrder> restingOrders = new ArrayList<>();
+        restingOrders.addAll(orderBook.buyOrders);
+        restingOrders.addAll(orderBook.sellOrders);
+        if (isBatchAuction) {
+            restingOrders.addAll(((BatchAuctionOrderBook) orderBook).marketBuyOrders);
+            restingOrders.addAll(((BatchAuctionOrderBook) orderBook).marketSellOrders);
+        }
+
+        Set<Long> restingOrderIds = new HashSet<>();
+        for (MutableOrder mutableOrder: restingOrders) {
+            assertTrue("Resting twice " + mutableOrder, restingOrderIds.add(mutableOrder.orderId));
+            assertFalse("Terminal order resting " + mutableOrder, isTerminal(mutableOrder.orderStatus()));
+        }
+
+        Set<Long> historyOrderIds = new HashSet<>();
+        for (MutableOrder mutableOrder: orderBook.orderHistory) {
+            assertTrue("In history twice " + mutableOrder, historyOrderIds.add(mutableOrder.orderId));
+            assertTrue("Active order in history " + mutableOrder, isTerminal(mutableOrder.orderStatus()));
+        }
+
+        for (MutableOrder mutableOrder: orderBook.allOrders.values()) {
+            if (isTerminal(mutableOrder.orderStatus())) {
+                assertTrue("Missing from history " + mutableOrder, historyOrderIds.contains(mutableOrder.orderId));
+            } else {
+                assertTrue("Active order not resting " + mutableOrder, restingOrderIds.contains(mutableOrder.orderId));
+            }
+
+            // Every cancel saw the one final state, however many times the order was cancelled
+            List<OrderStatus> cancelResults = observations.cancelResults.get(mutableOrder.orderId);
+            if (cancelResults != null) {
+                for (OrderStatus orderStatus: cancelResults) {
+                    assertEquals(mutableOrder.orderStatus(), orderStatus);
+                }
+            } else if (mutableOrder.isCancelled) {
+                // Only an auction cancels orders by itself, and only unfilled market orders
+                assertTrue("Cancelled without a cancel " + mutableOrder, isBatchAuction && !mutableOrder.isLimitOrder);
+            }
+        }
+
+        // The price levels add up to the resting orders
+        assertEquals(expectedDepth(orderBook), orderBook.getDepth(0));
+
+        if (!isBatchAuction && !orderBook.buyOrders.isEmpty() && !orderBook.sellOrders.isEmpty()) {
+            assertTrue("Crossed book",
+                    orderBook.buyOrders.first().limitPrice < orderBook.sellOrders.first().limitPrice);
+        }
+    }
+
+    /***
+     * Check that each order's fills on the tape add up to its filled volume and cost, that trades respect limits, and
+     * that each taker in continuous matching swept the book in price-time priority.
+     * @param orderBook Order book.
+     * @param isBatchAuction True if the book matches in batch auctions.
+     */
+    private static void assertTradeTapeMatchesOrders(OrderBook orderBook, boolean isBatchAuction) {
+        TradeTape tradeTape = orderBook.tradeTape;
+        assertEquals("Trade tape wrapped, reduce the number of operations", 1, tradeTape.oldestSequence());
+
+        Map<Long, long[]> volumeAndCost = new HashMap<>();
+        Set<Long> finishedTakerIds = new HashSet<>();
+        long takerId = 0;
+        long lastPassivePrice = 0;
+        long lastPassiveId = 0;
+
+        TradeTape.Entry entry = new TradeTape.Entry();
+        for (long sequence = 1; sequence <= tradeTape.lastSequence(); sequence++) {
+            assertTrue(tradeTape.read(sequence, entry));
+
+            MutableOrder buyOrder = orderBook.allOrders.get(entry.buyOrderId);
+            MutableOrder sellOrder = orderBook.allOrders.get(entry.sellOrderId);
+            assertTrue(buyOrder.isBuyOrder && !sellOrder.isBuyOrder);
+            assertTrue(entry.volume > 0);
+            assertTrue("Buy limit exceeded", !buyOrder.isLimitOrder || entry.price <= buyOrder.limitPrice);
+            assertTrue("Sell limit exceeded", !sellOrder.isLimitOrder || entry.price >= sellOrder.limitPrice);
+
+            for (long orderId: new long[] {entry.buyOrderId, entry.sellOrderId}) {
+                long[] totals = volumeAndCost.computeIfAbsent(orderId, k -> new long[2]);
+                totals[0] += entry.volume;
+                totals[1] += entry.volume * entry.price;
+            }
+
+            if (isBatchAuction) {
+                assertEquals(TradeTape.TAKER_NONE, entry.taker);
+                continue;
+            }
+
+            // Continuous trades execute at the passive order's price, and a taker's trades are all together
+            assertTrue(entry.taker == TradeTape.TAKER_BUY || entry.taker == TradeTape.TAKER_SELL);
+            boolean isTakerBuy = entry.taker == TradeTape.TAKER_BUY;
+            MutableOrder passiveOrder = isTakerBuy ? sellOrder : buyOrder;
+            long entryTakerId = isTakerBuy ? entry.buyOrderId : entry.sellOrderId;
+            assertEquals(passiveOrder.limitPrice, entry.price);
+
+            if (entryTakerId != takerId) {
+                assertTrue("Taker traded in two sweeps " + entryTakerId, finishedTakerIds.add(takerId));
+                takerId = entryTakerId;
+            } else {
+                int priceCompare = Long.compare(entry.price, lastPassivePrice);
+                assertTrue("Swept worse price first", isTakerBuy ? priceCompare >= 0 : priceCompare <= 0);
+                assertTrue("Swept later order first", priceCompare != 0 || passiveOrder.orderId > lastPassiveId);
+            }
+            lastPassivePrice = entry.price;
+            lastPassiveId = passiveOrder.orderId;
+        }
+
+        for (MutableOrder mutableOrder: orderBook.allOrders.values()) {
+            long[] totals = volumeAndCost.getOrDefault(mutableOrder.orderId, new long[2]);
+            assertEquals("Filled volume of " + mutableOrder, mutableOrder.filledVolume, totals[0]);
+            assertEquals("Cost of " + mutableOrder, mutableOrder.cost, totals[1]);
+        }
+    }
+
+    /***
+     * Aggregate the resting limit orders of a book the slow way.
+     * @param orderBook Order book.
+     * @return Depth expected from the book's price levels.
+     */
+    private static Depth expectedDepth(OrderBook orderBook) {
+        Depth.Builder builder = Depth.newBuilder();
+        for (DepthLevel depthLevel: aggregate(orderBook.buyOrders)) {
+            builder.addBids(depthLevel);
+        }
+        for (DepthLevel depthLevel: aggregate(orderBook.sellOrders)) {
+            builder.addAsks(depthLevel);
+        }
+        return builder.build();
+    }
+
+    /***
+     * @param orders Orders in priority order.
+     * @return Total volume and order count at each price, in priority order.
+     */
+    private static List<DepthLevel> aggregate(Iterable<MutableOrder> orders) {
+        List<DepthLevel> depthLevels = new ArrayList<>();
+        long price = 0;
+        long volume = 0;
+        int orderCount = 0;
+        for (MutableOrder mutableOrder: orders) {
+            if (orderCount > 0 && mutableOrder.limitPrice != price) {
+                depthLevels.add(makeDepthLevel(price, volume, orderCount));
+                volume = 0;
+                orderCount = 0;
+            }
+            price = mutableOrder.limitPrice;
+            volume += mutableOrder.remainingVolume;
+            orderCount++;
+        }
+        if (orderCount > 0) {
+            depthLevels.add(makeDepthLevel(price, volume, orderCount));
+        }
+        return depthLevels;
+    }
+
+    private static void assertDepthConsistent(Depth depth, boolean mustNotCross) {
+        for (int i = 0; i < depth.getBidsCount(); i++) {
+            assertLevelConsistent(depth.getBids(i));
+            assertTrue(i == 0 || depth.getBids(i).getPrice() < depth.getBids(i - 1).getPrice());
+        }
+        for (int i = 0; i < depth.getAsksCount(); i++) {
+            assertLevelConsistent(depth.getAsks(i));
+            assertTrue(i == 0 || depth.getAsks(i).getPrice() > depth.getAsks(i - 1).getPrice());
+        }
+        if (mustNotCross && depth.getBidsCount() > 0 && depth.getAsksCount() > 0) {
+            assertTrue("Crossed depth " + depth, depth.getBids(0).getPrice() < depth.getAsks(0).getPrice());
+        }
+    }
+
+    private static void assertLevelConsistent(DepthLevel depthLevel) {
+        assertTrue(depthLevel.getOrderCount() > 0);
+        assertTrue(depthLevel.getVolume() >= depthLevel.getOrderCount());
+    }
+
+    /***
+     * An order seen again by the same thread can only have moved forward.
+     * @param previous Order when last retrieved, null if never.
+     * @param current Order now.
+     */
+    private static void assertRetrievedOrderProgresses(Order previous, Order current) {
+        if (previous == null) {
+            return;
+        }
+        assertEquals(previous.getVolume(), current.getVolume());
+        assertTrue(current.getMatchedVolume() >= previous.getMatchedVolume());
+        if (isTerminal(previous.getOrderStatus())) {
+            assertEquals(previous, current);
+        }
+    }
+
+    private static boolean isTerminal(OrderStatus orderStatus) {
+        return orderStatus == OrderStatus.FILLED ||
+                orderStatus == OrderStatus.CANCELLED ||
+                orderStatus == OrderStatus.PARTIALLY_FILLED_AND_CANCELLED;
+    }
+
+    ///
+    // Linearizability
+    ///
+
+    private static final int SUBMIT = 0;
+    private static final int CANCEL = 1;
+    private static final int RETRIEVE = 2;
+    private static final int QUOTE = 3;
+    private static final int DEPTH = 4;
+
+    private static final long CUSTOMER_ID = 6001;
+
+    /**
+     * One call made during a history, with when it was made and what it returned.
+     */
+    static class Operation {
+        final int kind;
+        final boolean isBuyOrder;
+        final long limitPrice;
+        final long volume;
+        final long orderId;
+        long invokeTime;
+        long responseTime;
+        Object result;
+
+        Operation(int kind, boolean isBuyOrder, long limitPrice, long volume, long orderId) {
+            this.kind = kind;
+            this.isBuyOrder = isBuyOrder;
+            this.limitPrice = limitPrice;
+            this.volume = volume;
+            this.orderId = orderId;
+        }
+
+        @Override
+        public String toString() {
+            return "\n" + kind + "|" + isBuyOrder + "|" + limitPrice + "|" + volume + "|" + orderId + " [" +
+                    invokeTime + ", " + responseTime + "] -> " + result;
+        }
+    }
+
+    /***
+     * Run a few operations per thread on one ticker at the same time and record them. Cancels and retrieves only use
+     * order IDs which have already been handed back to a thread, as a client can't otherwise know them.
+     * @param seed Random seed.
+     * @return History of all operations.
+     */
+    private List<Operation> recordHistory(long seed) throws Exception {
+        CyclicBarrier startBarrier = new CyclicBarrier(LINEARIZABILITY_THREADS);
+        List<Long> knownOrderIds = new CopyOnWriteArrayList<>();
+        List<Callable<List<Operation>>> tasks = new ArrayList<>();
+
+        for (int thread = 0; thread < LINEARIZABILITY_THREADS; thread++) {
+            Random random = new Random(seed + thread);
+            tasks.add(() -> {
+                List<Operation> operations = new ArrayList<>();
+                startBarrier.await();
+
+                for (int i = 0; i < LINEARIZABILITY_OPERATIONS_PER_THREAD; i++) {
+                    int kind = random.nextInt(5);
+                    if ((kind == CANCEL || kind == RETRIEVE) && knownOrderIds.isEmpty()) {
+                        kind = SUBMIT;
+                    }
+                    Operation operation = new Operation(kind, random.nextBoolean(), 99 + random.nextInt(3),
+                            1 + random.nextInt(3),
+                            knownOrderIds.isEmpty() ? 0 : knownOrderIds.get(random.nextInt(knownOrderIds.size())));
+
+                    operation.invokeTime = System.nanoTime();
+                    operation.result = invoke(operation);
+                    operation.responseTime = System.nanoTime();
+
+                    if (kind == SUBMIT) {
+                        knownOrderIds.add(((Order) operation.result).getOrderId());
+                    }
+                    operations.add(operation);
+                }
+                return operations;
+            });
+        }
+
+        List<Operation> history = new ArrayList<>();
+        for (List<Operation> operations: runAll(tasks)) {
+            history.addAll(operations);
+        }
+        return history;
+    }
+
+    private Object invoke(Operation operation) {
+        switch (operation.kind) {
+            case SUBMIT:
+                return orderManager.submitOrder(SubmitOrderRequest.newBuilder()
+                        .setCustomerId(CUSTOMER_ID)
+                        .setTicker(Ticker.BTC_USD)
+                        .setOrderDirection(operation.isBuyOrder ? OrderDirection.BUY : OrderDirection.SELL)
+                        .setOrderType(OrderType.LIMIT)
+                        .setLimitPrice(operation.limitPrice)
+                        .setVolume(operation.volume)
+                        .build());
+            case CANCEL:
+                return orderManager.cancelOrder(operation.orderId);
+            case RETRIEVE:
+                return orderManager.retrieveOrder(OrderReference.newBuilder().setOrderId(operation.orderId).build());
+            case QUOTE:
+                return orderManager.getQuote(TickerReference.newBuilder().setTicker(Ticker.BTC_USD).build());
+            default:
+                return orderManager.getDepth(DepthRequest.newBuilder().setTicker(Ticker.BTC_USD).build());
+        }
+    }
+
+    /***
+     * Search for an order of the operations which respects real time and in which the sequential model returns what
+     * the engine returned (Wing and Gong, memoized as by Lowe).
+     * @param history All operations.
+     * @param linearized Bit set of the operations already placed.
+     * @param model Model after the operations already placed.
+     * @param visited States already found to be dead ends.
+     * @return True if the rest of the history can be linearized.
+     */
+    private static boolean isLinearizable(List<Operation> history, long linearized, Model model, Set<String> visited) {
+        if (Long.bitCount(linearized) == history.size()) {
+            return true;
+        }
+        if (!visited.add(linearized + "|" + model)) {
+            return false;
+        }
+
+        // An operation can go next if it started before every other remaining operation finished
+        long earliestResponseTime = Long.MAX_VALUE;
+        for (int i = 0; i < history.size(); i++) {
+            if ((linearized & (1L << i)) == 0) {
+                earliestResponseTime = Math.min(earliestResponseTime, history.get(i).responseTime);
+            }
+        }
+
+        for (int i = 0; i < history.size(); i++) {
+            Operation operation = history.get(i);
+            if ((linearized & (1L << i)) != 0 || operation.invokeTime > earliestResponseTime) {
+                continue;
+            }
+
+            Model next = model.copy();
+            if (next.apply(operation).equals(operation.result) &&
+                    isLinearizable(history, linearized | (1L << i), next, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sequential model of a continuously matched order book, written independently of OrderBook. Orders rest in price
+     * then order ID priority and trade at the resting order's price.
+     */
+    static class Model {
+        final TreeMap<Long, long[]> orders = new TreeMap<>();
+
+        private static final int IS_BUY = 0;
+        private static final int PRICE = 1;
+        private static final int VOLUME = 2;
+        private static final int MATCHED = 3;
+        private static final int COST = 4;
+        private static final int CANCELLED = 5;
+
+        Model copy() {
+            Model model = new Model();
+            orders.forEach((orderId, order) -> model.orders.put(orderId, order.clone()));
+            return model;
+        }
+
+        Object apply(Operation operation) {
+            switch (operation.kind) {
+                case SUBMIT:
+                    return submit(((Order) operation.result).getOrderId(), operation);
+                case CANCEL:
+                    long[] order = orders.get(operation.orderId);
+                    if (order == null) {
+                        return Optional.empty();
+                    }
+                    if (isResting(order)) {
+                        order[CANCELLED] = 1;
+                    }
+                    return Optional.of(status(order));
+                case RETRIEVE:
+                    return orders.containsKey(operation.orderId) ?
+                            Optional.of(toOrder(operation.orderId, orders.get(operation.orderId))) : Optional.empty();
+                case QUOTE:
+                    List<DepthLevel> bids = levels(true);
+                    List<DepthLevel> asks = levels(false);
+                    return Quote.newBuilder()
+                            .setBid(bids.isEmpty() ? 0 : bids.get(0).getPrice())
+                            .setAsk(asks.isEmpty() ? 0 : asks.get(0).getPrice())
+                            .build();
+                default:
+                    Depth.Builder builder = Depth.newBuilder();
+                    levels(true).forEach(builder::addBids);
+                    levels(false).forEach(builder::addAsks);
+                    return builder.build();
+            }
+        }
+
+        private Order submit(long orderId, Operation operation) {
+            long[] taker = {operation.isBuyOrder ? 1 : 0, operation.limitPrice, operation.volume, 0, 0, 0};
+
+            while (taker[MATCHED] < taker[VOLUME]) {
+                long[] best = null;
+                for (long[] order: orders.values()) {
+                    // TreeMap iterates in order ID order, so only a strictly better price replaces the best
+                    if (isResting(order) && order[IS_BUY] != taker[IS_BUY] &&
+                            (best == null || (taker[IS_BUY] == 1 ? order[PRICE] < best[PRICE] :
+                                    order[PRICE] > best[PRICE]))) {
+                        best = order;
+                    }
+                }
+                if (best == null || (taker[IS_BUY] == 1 ? best[PRICE] > taker[PRICE] : best[PRICE] < taker[PRICE])) {
+                    break;
+                }
+
+                long volume = Math.min(taker[VOLUME] - taker[MATCHED], best[VOLUME] - best[MATCHED]);
+                taker[MATCHED] += volume;
+                best[MATCHED] += volume;
+                taker[COST] += volume * best[PRICE];
+                best[COST] += volume * best[PRICE];
+            }
+
+            orders.put(orderId, taker);
+            return toOrder(orderId, taker);
+        }
+
+        private List<DepthLevel> levels(boolean isBuySide) {
+            TreeMap<Long, long[]> levels = new TreeMap<>(isBuySide ? Collections.reverseOrder() : null);
+            for (long[] order: orders.values()) {
+                if (isResting(order) && (order[IS_BUY] == 1) == isBuySide) {
+                    long[] level = levels.computeIfAbsent(order[PRICE], k -> new long[2]);
+                    level[0] += order[VOLUME] - order[MATCHED];
+                    level[1]++;
+                }
+            }
+            List<DepthLevel> depthLevels = new ArrayList<>();
+            levels.forEach((price, level) -> depthLevels.add(makeDepthLevel(price, level[0], (int) level[1])));
+            return depthLevels;
+        }
+
+        private static boolean isResting(long[] order) {
+            return order[CANCELLED] == 0 && order[MATCHED] < order[VOLUME];
+        }
+
+        private static OrderStatus status(long[] order) {
+            if (order[CANCELLED] == 1) {
+                return order[MATCHED] == 0 ? OrderStatus.CANCELLED : OrderStatus.PARTIALLY_FILLED_AND_CANCELLED;
+            }
+            if (order[MATCHED] == 0) {
+                return OrderStatus.PENDING;
+            }
+            return order[MATCHED] == order[VOLUME] ? OrderStatus.FILLED : OrderStatus.PARTIALLY_FILLED;
+        }
+
+        private static Order toOrder(long orderId, long[] order) {
+            return Order.newBuilder()
+                    .setOrderId(orderId)
+                    .setCustomerId(CUSTOMER_ID)
+                    .setTicker(Ticker.BTC_USD)
+                    .setOrderDirection(order[IS_BUY] == 1 ? OrderDirection.BUY : OrderDirection.SELL)
+                    .setOrderType(OrderType.LIMIT)
+                    .setOrderStatus(status(order))
+                    .setLimitPrice(order[PRICE])
+                    .setVolume(order[VOLUME])
+                    .setMeanMatchedPrice(order[MATCHED] == 0 ? 0 : order[COST] / order[MATCHED])
+                    .setMatchedVolume(order[MATCHED])
+                    .build();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder stringBuilder = new StringBuilder();
+            orders.forEach((orderId, order) -> stringBuilder.append(orderId).append(Arrays.toString(order)));
+            return stringBuilder.toString();
+        }
+    }
+
+    ///
+    // Helpers
+    ///
+
+    /***
+     * Run tasks on the executor and wait for all of them, failing with the first task's failure.
+     * @param tasks Tasks.
+     * @param <T> Task result type.
+     * @return Task results in order.
+     */
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws Exception {
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> task: tasks) {
+            futures.add(executorService.submit(task));
+        }
+
+        List<T> results = new ArrayList<>();
+        for (Future<T> future: futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (Exception) e.getCause();
+            }
+        }
+        return results;
+    }
+
+    private static SubmitOrderRequest makeRandomSubmitOrderRequest(Random random, Ticker ticker) {
+        boolean isLimitOrder = random.nextInt(5) != 0;
+        return SubmitOrderRequest.newBuilder()
+                .setCustomerId(6000 + random.nextInt(100))
+                .setTicker(ticker)
+                .setOrderDirection(random.nextBoolean() ? OrderDirection.BUY : OrderDirection.SELL)
+                .setOrderType(isLimitOrder ? OrderType.LIMIT : OrderType.MARKET)
+                .setLimitPrice(isLimitOrder ? 9950 + random.nextInt(11) * 10 : 0)
+                .setVolume(1 + random.nextInt(10))
+                .build();
+    }
+
+    private static DepthLevel makeDepthLevel(long price, long volume, int orderCount) {
+        return DepthLevel.newBuilder()
+                .setPrice(price)
+                .setVolume(volume)
+                .setOrderCount(orderCount)
+                .build();
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.grpc;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class OrderMatcherServiceImplTest {
+    OrderManager orderManager;
+    Server server;
+    ManagedChannel channel;
+    OrderMatcherServiceGrpc.OrderMatcherServiceBlockingStub stub;
+
+    @Before
+    public void setup() throws IOException {
+        orderManager = new OrderManager();
+
+        String serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName)
+                .addService(new OrderMatcherServiceImpl(orderManager))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(serverName).build();
+        stub = OrderMatcherServiceGrpc.newBlockingStub(channel);
+    }
+
+    @After
+    public void teardown() throws InterruptedException {
+        channel.shutdownNow();
+        server.shutdownNow();
+        orderManager.shutdown();
+    }
+
+    @Test
+    public void testStreamTradesReplaysThenFollows() {
+        TradeTape tradeTape = orderManager.getTradeTape(Ticker.BTC_USD);
+        for (int i = 1; i <= 3; i++) {
+            tradeTape.publish(10000 + i, 1, i, i, TradeTape.TAKER_BUY);
+        }
+
+        Iterator<Trade> trades = stub.streamTrades(makeTradeStreamRequest(2));
+        assertEquals(10002, trades.next().getPrice());
+        assertEquals(10003, trades.next().getPrice());
+
+        tradeTape.publish(10004, 1, 4, 4, TradeTape.TAKER_BUY);
+        Trade trade = trades.next();
+        assertEquals(4, trade.getSequence());
+        assertEquals(10004, trade.getPrice());
+    }
+
+    @Test
+    public void testStreamTradesSkipsEvictedTrades() {
+        /**
+         * Replaying from sequence 1 after the tape has wrapped starts from the oldest trade still retained.
+         */
+
+        TradeTape tradeTape = orderManager.getTradeTape(Ticker.BTC_USD);
+        for (int i = 1; i <= TradeTape.DEFAULT_CAPACITY + 10; i++) {
+            tradeTape.publish(10000, 1, i, i, TradeTape.TAKER_BUY);
+        }
+        assertEquals(11, tradeTape.oldestSequence());
+
+        Iterator<Trade> trades = stub.streamTrades(makeTradeStreamRequest(1));
+        assertEquals(11, trades.next().getSequence());
+        assertEquals(12, trades.next().getSequence());
+    }
+
+    @Test
+    public void testStreamBarsReplaysThenFollows() throws InterruptedException {
+        /**
+         * Trades timestamped in past seconds are completed into bars by the aggregator straight away.
+         */
+
+        TradeTape tradeTape = orderManager.getTradeTape(Ticker.BTC_USD);
+        BarSeries barSeries = orderManager.getBarSeries(Ticker.BTC_USD, BarInterval.ONE_SECOND);
+        for (int i = 1; i <= 3; i++) {
+            tradeTape.publish(i * 1000, 10000 + i, i, i, i, TradeTape.TAKER_BUY);
+        }
+        awaitBars(barSeries, 3);
+
+        Iterator<Bar> bars = stub.streamBars(BarStreamRequest.newBuilder()
+                .setTicker(Ticker.BTC_USD)
+                .setInterval(BarInterval.ONE_SECOND)
+                .setFromSequence(2)
+                .build());
+        Bar bar = bars.next();
+        assertEquals(2, bar.getSequence());
+        assertEquals(2000, bar.getStartTime());
+        assertEquals(10002, bar.getClose());
+        assertEquals(3, bars.next().getSequence());
+
+        tradeTape.publish(4000, 10004, 1, 4, 4, TradeTape.TAKER_BUY);
+        bar = bars.next();
+        assertEquals(4, bar.getSequence());
+        assertEquals(4000, bar.getStartTime());
+        assertEquals(10004, bar.getClose());
+    }
+
+    @Test
+    public void testStreamsRejectUnknownTicker() {
+        Iterator<Trade> trades = stub.streamTrades(TradeStreamRequest.newBuilder()
+                .setTickerValue(99)
+                .build());
+        try {
+            trades.hasNext();
+            fail("Expected INVALID_ARGUMENT for an unknown ticker");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+        }
+
+        Iterator<Bar> bars = stub.streamBars(BarStreamRequest.newBuilder()
+                .setTickerValue(99)
+                .setInterval(BarInterval.ONE_SECOND)
+                .build());
+        try {
+            bars.hasNext();
+            fail("Expected INVALID_ARGUMENT for an unknown ticker");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+        }
+    }
+
+    @Test
+    public void testQueriesRejectInvalidArguments() {
+        try {
+            stub.getDepth(DepthRequest.newBuilder()
+                    .setTicker(Ticker.BTC_USD)
+                    .setLevels(-1)
+                    .build());
+            fail("Expected INVALID_ARGUMENT for negative levels");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+        }
+
+        try {
+            stub.estimateFill(FillEstimateRequest.newBuilder()
+                    .setTicker(Ticker.BTC_USD)
+                    .setOrderDirection(OrderDirection.BUY)
+                    .setVolume(0)
+                    .build());
+            fail("Expected INVALID_ARGUMENT for no volume");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+        }
+    }
+
+    ///
+    // Utility Functions
+    ///
+
+    private static void awaitBars(BarSeries barSeries, long sequence) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (barSeries.lastSequence() < sequence) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Bar " + sequence + " was never completed");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static TradeStreamRequest makeTradeStreamRequest(long fromSequence) {
+        return TradeStreamRequest.newBuilder()
+                .setTicker(Ticker.BTC_USD)
+                .setFromSequence(fromSequence)
+                .build();
+    }
+}
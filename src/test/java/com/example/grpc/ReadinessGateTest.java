@@ -0,0 +1,103 @@
+package com.example.grpc;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.health.v1.HealthCheckRequest;
+import io.grpc.health.v1.HealthCheckResponse.ServingStatus;
+import io.grpc.health.v1.HealthGrpc;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.services.HealthStatusManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.example.grpc.TestOrders.makeLimitSubmitOrderRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ReadinessGateTest {
+    OrderManager orderManager;
+    ReadinessGate readinessGate;
+    Server server;
+    ManagedChannel channel;
+    OrderMatcherServiceGrpc.OrderMatcherServiceBlockingStub stub;
+    HealthGrpc.HealthBlockingStub healthStub;
+
+    @Before
+    public void setup() throws IOException {
+        orderManager = new OrderManager();
+
+        HealthStatusManager healthStatusManager = new HealthStatusManager();
+        readinessGate = new ReadinessGate(healthStatusManager, OrderMatcherServiceGrpc.SERVICE_NAME);
+
+        String serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName)
+                .addService(ServerInterceptors.intercept(new OrderMatcherServiceImpl(orderManager), readinessGate))
+                .addService(healthStatusManager.getHealthService())
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(serverName).build();
+        stub = OrderMatcherServiceGrpc.newBlockingStub(channel);
+        healthStub = HealthGrpc.newBlockingStub(channel);
+    }
+
+    @After
+    public void teardown() throws InterruptedException {
+        channel.shutdownNow();
+        server.shutdownNow();
+        orderManager.shutdown();
+    }
+
+    @Test
+    public void testClosedUntilOpened() {
+        assertEquals(ServingStatus.NOT_SERVING, checkHealth(OrderMatcherServiceGrpc.SERVICE_NAME));
+        assertEquals(ServingStatus.NOT_SERVING, checkHealth(HealthStatusManager.SERVICE_NAME_ALL_SERVICES));
+
+        try {
+            stub.submitOrder(makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD, OrderDirection.BUY, 10000, 10));
+            fail("Expected UNAVAILABLE before the gate is opened");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        }
+        try {
+            stub.getQuote(TickerReference.newBuilder().setTicker(Ticker.BTC_USD).build());
+            fail("Expected UNAVAILABLE before the gate is opened");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        }
+
+        // Nothing got through to the order books
+        assertEquals(0, orderManager.getOrderBook(Ticker.BTC_USD).allOrders.size());
+    }
+
+    @Test
+    public void testOpen() {
+        readinessGate.open();
+
+        assertEquals(ServingStatus.SERVING, checkHealth(OrderMatcherServiceGrpc.SERVICE_NAME));
+        assertEquals(ServingStatus.SERVING, checkHealth(HealthStatusManager.SERVICE_NAME_ALL_SERVICES));
+
+        long orderId = stub.submitOrder(makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD, OrderDirection.BUY,
+                10000, 10)).getOrderId();
+        assertEquals(10000, stub.getQuote(TickerReference.newBuilder().setTicker(Ticker.BTC_USD).build()).getBid());
+        assertEquals(orderId, stub.retrieveOrder(OrderReference.newBuilder()
+                .setOrderId(orderId)
+                .build()).getOrder().getOrderId());
+    }
+
+    ///
+    // Utility Functions
+    ///
+
+    private ServingStatus checkHealth(String serviceName) {
+        return healthStub.check(HealthCheckRequest.newBuilder()
+                .setService(serviceName)
+                .build()).getStatus();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.grpc;
+
+import static org.junit.Assert.assertEquals;
+
+/***
+ * Order requests and assertions shared by the order book tests.
+ */
+final class TestOrders {
+    private TestOrders() {
+    }
+
+    static SubmitOrderRequest makeLimitSubmitOrderRequest(long customerId, Ticker ticker, OrderDirection orderDirection,
+                                                          long limitPrice, long volume)
+    {
+        return SubmitOrderRequest.newBuilder()
+                .setCustomerId(customerId)
+                .setTicker(ticker)
+                .setOrderDirection(orderDirection)
+                .setOrderType(OrderType.LIMIT)
+                .setLimitPrice(limitPrice)
+                .setVolume(volume)
+                .build();
+    }
+
+    static SubmitOrderRequest makeMarketSubmitOrderRequest(long customerId, Ticker ticker,
+                                                           OrderDirection orderDirection, long volume)
+    {
+        return SubmitOrderRequest.newBuilder()
+                .setCustomerId(customerId)
+                .setTicker(ticker)
+                .setOrderDirection(orderDirection)
+                .setOrderType(OrderType.MARKET)
+                .setVolume(volume)
+                .build();
+    }
+
+    static void assertOrderShort(Order order, OrderStatus orderStatus, long meanMatchedPrice,
+                                 long meanMatchedVolume) {
+        assertEquals(orderStatus, order.getOrderStatus());
+        assertEquals(meanMatchedPrice, order.getMeanMatchedPrice());
+        assertEquals(meanMatchedVolume, order.getMatchedVolume());
+    }
+}
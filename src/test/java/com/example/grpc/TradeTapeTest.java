@@ -0,0 +1,128 @@
+package com.example.grpc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.example.grpc.TestOrders.makeLimitSubmitOrderRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TradeTapeTest {
+    TradeTape tradeTape;
+    TradeTape.Entry entry;
+
+    @Before
+    public void setup() {
+        tradeTape = new TradeTape(Ticker.BTC_USD, 4);
+        entry = new TradeTape.Entry();
+    }
+
+    @Test
+    public void testPublishAndRead() {
+        assertEquals(0, tradeTape.lastSequence());
+        assertFalse(tradeTape.read(1, entry));
+
+        tradeTape.publish(10000, 10, 1, 2, TradeTape.TAKER_SELL);
+
+        assertEquals(1, tradeTape.lastSequence());
+        assertTrue(tradeTape.read(1, entry));
+        assertEquals(1, entry.sequence);
+        assertEquals(10000, entry.price);
+        assertEquals(10, entry.volume);
+        assertEquals(1, entry.buyOrderId);
+        assertEquals(2, entry.sellOrderId);
+        assertEquals(TradeTape.TAKER_SELL, entry.taker);
+    }
+
+    @Test
+    public void testOldTradesOverwritten() {
+        for (int i = 1; i <= 6; i++) {
+            tradeTape.publish(10000 + i, 1, i, i, TradeTape.TAKER_BUY);
+        }
+
+        assertEquals(6, tradeTape.lastSequence());
+        assertEquals(3, tradeTape.oldestSequence());
+        assertFalse(tradeTape.read(2, entry));
+        assertTrue(tradeTape.read(3, entry));
+        assertEquals(10003, entry.price);
+    }
+
+    @Test
+    public void testOrderBookPublishesFills() {
+        /**
+         * #1: Customer 6001 SELL 5 BTC_USD @ 10000
+         * #2: Customer 6002 SELL 5 BTC_USD @ 10100
+         * #3: Customer 6003 BUY 8 BTC_USD @ 10100
+         */
+
+        OrderBook orderBook = new OrderBook(Ticker.BTC_USD);
+        orderBook.submitOrder(1, makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD, OrderDirection.SELL, 10000, 5));
+        orderBook.submitOrder(2, makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD, OrderDirection.SELL, 10100, 5));
+        orderBook.submitOrder(3, makeLimitSubmitOrderRequest(6001, Ticker.BTC_USD, OrderDirection.BUY, 10100, 8));
+
+        assertEquals(2, orderBook.tradeTape.lastSequence());
+
+        assertTrue(orderBook.tradeTape.read(1, entry));
+        assertEquals(10000, entry.price);
+        assertEquals(5, entry.volume);
+        assertEquals(3, entry.buyOrderId);
+        assertEquals(1, entry.sellOrderId);
+        assertEquals(TradeTape.TAKER_BUY, entry.taker);
+
+        assertTrue(orderBook.tradeTape.read(2, entry));
+        assertEquals(10100, entry.price);
+        assertEquals(3, entry.volume);
+        assertEquals(2, entry.sellOrderId);
+    }
+
+    @Test
+    public void testBarSeries() {
+        BarSeries barSeries = new BarSeries(Ticker.BTC_USD, BarInterval.ONE_SECOND, 4);
+
+        barSeries.onTrade(1000, 10000, 1);
+        barSeries.onTrade(1200, 10300, 2);
+        barSeries.onTrade(1900, 9900, 3);
+        barSeries.onTrade(1950, 10100, 4);
+        assertEquals(0, barSeries.lastSequence());
+
+        barSeries.onTrade(2100, 10200, 5);
+        assertEquals(1, barSeries.lastSequence());
+
+        Bar bar = barSeries.readBar(1);
+        assertEquals(1000, bar.getStartTime());
+        assertEquals(10000, bar.getOpen());
+        assertEquals(10300, bar.getHigh());
+        assertEquals(9900, bar.getLow());
+        assertEquals(10100, bar.getClose());
+        assertEquals(10, bar.getVolume());
+        assertEquals(4, bar.getTradeCount());
+
+        barSeries.onTime(2999);
+        assertEquals(1, barSeries.lastSequence());
+        barSeries.onTime(3000);
+        assertEquals(2, barSeries.lastSequence());
+        assertEquals(10200, barSeries.readBar(2).getClose());
+    }
+
+    @Test
+    public void testLateTradeDoesNotRepublishBar() {
+        BarSeries barSeries = new BarSeries(Ticker.BTC_USD, BarInterval.ONE_SECOND, 4);
+
+        barSeries.onTrade(1500, 10000, 1);
+        barSeries.onTime(2000);
+        assertEquals(1, barSeries.lastSequence());
+
+        // Timestamped in the interval which was just completed
+        barSeries.onTrade(1999, 10100, 2);
+        barSeries.onTime(3000);
+        assertEquals(1, barSeries.lastSequence());
+        assertEquals(1, barSeries.lateTradeCount());
+
+        barSeries.onTrade(3100, 10200, 3);
+        barSeries.onTime(4000);
+        assertEquals(2, barSeries.lastSequence());
+        assertEquals(3000, barSeries.readBar(2).getStartTime());
+        assertEquals(3, barSeries.readBar(2).getVolume());
+    }
+}